@@ -25,6 +25,7 @@ import io.github.lonamiwebs.stringlate.classes.applications.ApplicationsSyncTask
 import io.github.lonamiwebs.stringlate.classes.lazyloader.FileCache;
 import io.github.lonamiwebs.stringlate.classes.lazyloader.ImageLoader;
 import io.github.lonamiwebs.stringlate.settings.AppSettings;
+import io.github.lonamiwebs.stringlate.utilities.ContextUtils;
 
 public class DiscoverActivity extends AppCompatActivity {
 
@@ -85,7 +86,7 @@ public class DiscoverActivity extends AppCompatActivity {
                 R.string.apps_repo_not_downloaded, getString(R.string.update_applications)));
         checkViewsVisibility(mApplicationAdapter.getItemCount() != 0);
 
-        Messenger.onApplicationsSync.add(applicationsSync);
+        Messenger.onApplicationsSync.add(applicationsSync, ContextUtils.MAIN_THREAD);
     }
 
     @Override
@@ -36,6 +36,7 @@ import io.github.lonamiwebs.stringlate.classes.RepoSyncTask;
 import io.github.lonamiwebs.stringlate.classes.repos.RepoHandler;
 import io.github.lonamiwebs.stringlate.classes.sources.GitSource;
 import io.github.lonamiwebs.stringlate.settings.AppSettings;
+import io.github.lonamiwebs.stringlate.utilities.ContextUtils;
 import io.github.lonamiwebs.stringlate.utilities.RepoHandlerHelper;
 
 import static android.app.Activity.RESULT_OK;
@@ -103,8 +104,8 @@ public class HistoryFragment extends Fragment {
         mSettings = new AppSettings(getContext());
         // Add listeners for new repositories
         // TODO Should this be on onCreateView? There may be a very unlikely race condition
-        Messenger.onRepoChange.add(changeListener);
-        Messenger.onRepoSync.add(syncingListener);
+        Messenger.onRepoChange.add(changeListener, ContextUtils.MAIN_THREAD);
+        Messenger.onRepoSync.add(syncingListener, ContextUtils.MAIN_THREAD);
     }
 
     @Override
@@ -260,10 +261,11 @@ public class HistoryFragment extends Fragment {
         try {
             ParcelFileDescriptor pfd = getContext().getContentResolver().openFileDescriptor(uri, "r");
             FileInputStream in = new FileInputStream(pfd.getFileDescriptor());
-            mLastSelectedRepo.importZip(in);
+            final boolean ok = mLastSelectedRepo.importZip(in);
             in.close();
             pfd.close();
-            Toast.makeText(getContext(), R.string.import_file_success, Toast.LENGTH_SHORT).show();
+            Toast.makeText(getContext(), ok ? R.string.import_file_success
+                    : R.string.import_file_failed, Toast.LENGTH_SHORT).show();
         } catch (IOException e) {
             e.printStackTrace();
             Toast.makeText(getContext(), R.string.import_file_failed, Toast.LENGTH_SHORT).show();
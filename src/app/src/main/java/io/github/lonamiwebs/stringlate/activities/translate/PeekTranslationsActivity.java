@@ -8,6 +8,7 @@ import android.widget.AdapterView;
 import android.widget.ListView;
 
 import java.util.ArrayList;
+import java.util.Map;
 
 import io.github.lonamiwebs.stringlate.R;
 import io.github.lonamiwebs.stringlate.adapters.TranslationPeekAdapter;
@@ -61,14 +62,9 @@ public class PeekTranslationsActivity extends AppCompatActivity {
 
     private void refreshTranslationsListView() {
         final ArrayList<TranslationPeekAdapter.Item> translations = new ArrayList<>();
-        for (String locale : mRepo.getLocales()) {
-            if (locale.equals(mLocale))
-                continue;
-
-            final String content = mRepo.loadResources(locale).getContent(mResourceId);
-            if (!content.isEmpty()) {
-                translations.add(new TranslationPeekAdapter.Item(locale, content));
-            }
+        for (Map.Entry<String, String> translation :
+                mRepo.getCrossLocaleIndex().getTranslations(mResourceId, mLocale).entrySet()) {
+            translations.add(new TranslationPeekAdapter.Item(translation.getKey(), translation.getValue()));
         }
 
         mTranslationsListView.setAdapter(new TranslationPeekAdapter(this, translations));
@@ -6,6 +6,7 @@ import android.content.Intent;
 import android.graphics.Paint;
 import android.graphics.Typeface;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
@@ -41,9 +42,13 @@ import java.io.IOException;
 import java.io.InvalidObjectException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 
 import io.github.lonamiwebs.stringlate.R;
@@ -55,11 +60,13 @@ import io.github.lonamiwebs.stringlate.classes.RepoSyncTask;
 import io.github.lonamiwebs.stringlate.classes.locales.LocaleString;
 import io.github.lonamiwebs.stringlate.classes.repos.RepoHandler;
 import io.github.lonamiwebs.stringlate.classes.repos.RepoProgress;
+import io.github.lonamiwebs.stringlate.classes.resources.Autosaver;
 import io.github.lonamiwebs.stringlate.classes.resources.ResourceStringComparator;
 import io.github.lonamiwebs.stringlate.classes.resources.Resources;
 import io.github.lonamiwebs.stringlate.classes.resources.ResourcesTranslation;
+import io.github.lonamiwebs.stringlate.classes.resources.TranslationValidator;
 import io.github.lonamiwebs.stringlate.classes.resources.tags.ResTag;
-import io.github.lonamiwebs.stringlate.classes.sources.GitSource;
+import io.github.lonamiwebs.stringlate.classes.sources.GitObjectSource;
 import io.github.lonamiwebs.stringlate.dialogs.LocaleSelectionDialog;
 import io.github.lonamiwebs.stringlate.settings.AppSettings;
 import io.github.lonamiwebs.stringlate.utilities.ContextUtils;
@@ -81,6 +88,7 @@ public class TranslateActivity extends AppCompatActivity implements LocaleSelect
     private TextView mOriginalStringTextView;
     private EditText mTranslatedStringEditText;
     private TextView mCopyStringTextView;
+    private TextView mOtherTranslationsTextView;
 
     private Spinner mLocaleSpinner;
     private Spinner mStringIdSpinner;
@@ -103,11 +111,25 @@ public class TranslateActivity extends AppCompatActivity implements LocaleSelect
 
     private Resources mDefaultResources;
     private Resources mSelectedLocaleResources;
+    private TranslationValidator mValidator;
 
     private RepoHandler mRepo;
 
     private boolean mLoaded;
 
+    // Edits are saved once the user stops typing for a bit (or at least every few seconds)
+    private static final long AUTOSAVE_IDLE_MS = 1000;
+    private static final long AUTOSAVE_MAX_DELAY_MS = 10 * 1000;
+    // How long we may block the UI waiting for the edits to be saved (e.g. when leaving)
+    private static final long SAVE_TIMEOUT_MS = 2000;
+
+    private Autosaver mAutosaver;
+    // The locale of every resources given to the autosaver, to know which one was saved
+    private final HashMap<Resources, String> mResourcesLocale = new HashMap<>();
+
+    // How many translations into other languages are shown as a hint at most
+    private static final int MAX_OTHER_TRANSLATIONS = 3;
+
     // Since the string filter (search) applies to both the original and the
     // translated strings we can't just put the same filter on different sets.
     // Instead, find the matching strings and save their IDs (so this new ID
@@ -136,6 +158,9 @@ public class TranslateActivity extends AppCompatActivity implements LocaleSelect
 
         mSettings = new AppSettings(this);
 
+        mAutosaver = new Autosaver(AUTOSAVE_IDLE_MS, AUTOSAVE_MAX_DELAY_MS);
+        mAutosaver.setOnSavedListener(onResourcesSaved, ContextUtils.MAIN_THREAD);
+
         mOriginalStringTextView = findViewById(R.id.originalStringEditText);
         mTranslatedStringEditText = findViewById(R.id.translatedStringEditText);
         mTranslatedStringEditText.addTextChangedListener(onTranslationChanged);
@@ -143,6 +168,9 @@ public class TranslateActivity extends AppCompatActivity implements LocaleSelect
         mCopyStringTextView = findViewById(R.id.copyString);
         mCopyStringTextView.setOnClickListener(copyStringListener);
 
+        mOtherTranslationsTextView = findViewById(R.id.otherTranslationsTextView);
+        mOtherTranslationsTextView.setOnClickListener(v -> launchPeekTranslationsActivity());
+
         mLocaleSpinner = findViewById(R.id.localeSpinner);
         mStringIdSpinner = findViewById(R.id.stringIdSpinner);
 
@@ -210,7 +238,9 @@ public class TranslateActivity extends AppCompatActivity implements LocaleSelect
 
     private void loadResources() {
         if (mRepo.hasDefaultLocale()) {
-            mDefaultResources = mRepo.loadDefaultResources();
+            // Only one string is shown at a time, so only load the content when needed
+            mDefaultResources = mRepo.loadLazyDefaultResources();
+            mValidator = new TranslationValidator(mDefaultResources);
             loadLocalesSpinner();
             checkTranslationVisibility();
         } else {
@@ -315,6 +345,9 @@ public class TranslateActivity extends AppCompatActivity implements LocaleSelect
                 if (!isLocaleSelected(true))
                     return true;
 
+                // The exports read the saved files
+                saveAndWait();
+
                 if (mSelectedLocaleResources.isEmpty()) {
                     Toast.makeText(this, R.string.no_strings_to_export, Toast.LENGTH_SHORT).show();
                     return true;
@@ -400,7 +433,16 @@ public class TranslateActivity extends AppCompatActivity implements LocaleSelect
     @Override
     protected void onPause() {
         super.onPause();
-        save();
+        saveAndWait();
+        // Once everything is saved, so the stats include this last save
+        Log.d("TranslateActivity", "Autosaver: " + mAutosaver.getStats());
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mAutosaver.setOnSavedListener(null, null);
+        mAutosaver.shutdown(); // Anything pending is still saved
     }
 
     //endregion
@@ -413,7 +455,7 @@ public class TranslateActivity extends AppCompatActivity implements LocaleSelect
     // repository, previously saving the strings.xml and asking whether
     // files should be overwritten after synchronizing (if any change was made)
     private void askUpdateStrings() {
-        save();
+        saveAndWait();
         if (mRepo.anyModified()) {
             // Do not mistake unsaved changes (modifications, .isSaved())
             // with the file being ever modified (.wasModified())
@@ -479,12 +521,12 @@ public class TranslateActivity extends AppCompatActivity implements LocaleSelect
         // resources would have to merge the new synchronized strings with what the user had.
         //
         // In summary, just kick the user.
-        save();
+        saveAndWait();
         finish();
 
-        // TODO Don't assume GitSource
+        // TODO Don't assume a git source (the branch is read straight from its git objects)
         new RepoSyncTask(this, mRepo,
-                new GitSource(mRepo.settings.getSource(), branch), false).start();
+                new GitObjectSource(mRepo.settings.getSource(), branch), false).start();
     }
 
     //endregion
@@ -774,13 +816,7 @@ public class TranslateActivity extends AppCompatActivity implements LocaleSelect
                     .setPositiveButton(getString(R.string.delete_locale), new DialogInterface.OnClickListener() {
                         @Override
                         public void onClick(DialogInterface dialogInterface, int i) {
-                            mRepo.deleteLocale(mSelectedLocale);
-                            loadLocalesSpinner();
-                            checkTranslationVisibility();
-
-                            // We need to clear the selected locale if it's now empty
-                            if (mLocaleSpinner.getCount() == 0)
-                                setCurrentLocale(null);
+                            deleteCurrentLocale();
                         }
                     })
                     .setNegativeButton(getString(R.string.cancel), null)
@@ -789,6 +825,9 @@ public class TranslateActivity extends AppCompatActivity implements LocaleSelect
     }
 
     private void deleteCurrentLocale() {
+        // The pending changes must not bring the deleted file back
+        mAutosaver.discard(mSelectedLocaleResources);
+        mAutosaver.flush(SAVE_TIMEOUT_MS);
         mRepo.deleteLocale(mSelectedLocale);
         loadLocalesSpinner();
         checkTranslationVisibility();
@@ -933,25 +972,48 @@ public class TranslateActivity extends AppCompatActivity implements LocaleSelect
         incrementStringIdIndex(+1);
     }
 
+    // The changes are saved in the background, so this only makes them be saved sooner
     private void save() {
         if (isLocaleSelected(false)) {
-            if (mSelectedLocaleResources.save()) {
-                updateProgress();
-            } else {
-                new AlertDialog.Builder(this)
-                        .setMessage(R.string.save_error)
-                        .setPositiveButton(R.string.retry, new DialogInterface.OnClickListener() {
-                            @Override
-                            public void onClick(DialogInterface dialogInterface, int i) {
-                                save();
-                            }
-                        })
-                        .setNegativeButton(R.string.cancel, null)
-                        .show();
-            }
+            mAutosaver.saveNow();
+            updateProgress();
         }
     }
 
+    // Saves the pending changes before going on, although never waits too long.
+    // If they can't be saved (or take too long), onResourcesSaved will tell
+    private void saveAndWait() {
+        mAutosaver.flush(SAVE_TIMEOUT_MS);
+        if (isLocaleSelected(false))
+            updateProgress();
+    }
+
+    private final Autosaver.OnSavedListener onResourcesSaved = new Autosaver.OnSavedListener() {
+        @Override
+        public void onSaved(Resources resources, boolean ok) {
+            if (ok) {
+                // The translations in other languages (e.g. the hints) must see this
+                final String locale = mResourcesLocale.get(resources);
+                if (locale != null)
+                    mRepo.getCrossLocaleIndex().invalidate(locale);
+                return;
+            }
+            if (isFinishing())
+                return;
+
+            new AlertDialog.Builder(TranslateActivity.this)
+                    .setMessage(R.string.save_error)
+                    .setPositiveButton(R.string.retry, new DialogInterface.OnClickListener() {
+                        @Override
+                        public void onClick(DialogInterface dialogInterface, int i) {
+                            mAutosaver.saveNow();
+                        }
+                    })
+                    .setNegativeButton(R.string.cancel, null)
+                    .show();
+        }
+    };
+
     //endregion
 
     //region EditText events
@@ -966,6 +1028,8 @@ public class TranslateActivity extends AppCompatActivity implements LocaleSelect
             if (mSelectedLocaleResources != null) {
                 String content = mTranslatedStringEditText.getText().toString();
                 mSelectedLocaleResources.setContent(mSelectedResource, content);
+                mAutosaver.changed(mSelectedLocaleResources);
+                checkTranslationIssues();
             }
         }
 
@@ -1034,22 +1098,8 @@ public class TranslateActivity extends AppCompatActivity implements LocaleSelect
             mProgressProgressBar.setProgress(0);
             mProgressTextView.setText("");
         } else {
-            // Keep track of the translated strings count and the characters of the
-            // original strings + those same characters if a translation is available.
-            // This will be used to make a weighted progress (if you translated only
-            // long strings, then this will be closer to 100% than if you translated small ones).
-            RepoProgress progress = new RepoProgress();
-            progress.stringsCount = mDefaultResources.count();
-
-            int chars;
-            for (ResTag rs : mDefaultResources) {
-                chars = rs.getContentLength();
-                progress.totalChars += chars;
-                if (mSelectedLocaleResources.contains(rs.getId())) {
-                    progress.translatedCount += 1;
-                    progress.currentChars += chars;
-                }
-            }
+            // Weighted by the length of the strings, see RepoProgress.calculate()
+            RepoProgress progress = RepoProgress.calculate(mDefaultResources, mSelectedLocaleResources);
 
             // The progress bar will be using the weighted value
             mProgressProgressBar.setMax(progress.totalChars);
@@ -1065,6 +1115,32 @@ public class TranslateActivity extends AppCompatActivity implements LocaleSelect
         }
     }
 
+    // Warns about placeholders or tags that don't match those on the original string
+    private void checkTranslationIssues() {
+        final ResTag translated = mSelectedResource == null || mValidator == null ?
+                null : mSelectedLocaleResources.getTag(mSelectedResource.getId());
+
+        if (translated == null) {
+            mTranslatedStringEditText.setError(null);
+        } else {
+            final List<TranslationValidator.Issue> issues =
+                    mValidator.validate(mSelectedLocale, translated);
+
+            if (issues.isEmpty()) {
+                mTranslatedStringEditText.setError(null);
+            } else {
+                final StringBuilder tokens = new StringBuilder();
+                for (TranslationValidator.Issue issue : issues) {
+                    if (tokens.length() != 0)
+                        tokens.append(", ");
+                    tokens.append(issue.missing ? '-' : '+').append(issue.token);
+                }
+                mTranslatedStringEditText.setError(
+                        getString(R.string.translation_tokens_mismatch, tokens.toString()));
+            }
+        }
+    }
+
     private void onFilterUpdated(@NonNull final String filter) {
         // Update the filter, it might have been changed from the Search activity
         // and JSON doesn't load the changes from the file but rather keeps a copyFile
@@ -1112,9 +1188,7 @@ public class TranslateActivity extends AppCompatActivity implements LocaleSelect
 
         ArrayList<String> spinnerArray = new ArrayList<>();
         final Iterator<ResTag> it = mDefaultResources.sortIterator(
-                ResourceStringComparator.getStringsComparator(mSettings.getStringSortMode()),
-                mFilteredIDs
-        );
+                mSettings.getStringSortMode(), mFilteredIDs);
         if (mShowIdentical) {
             // Only show those which translation is identical to the original text
             while (it.hasNext()) {
@@ -1177,6 +1251,7 @@ public class TranslateActivity extends AppCompatActivity implements LocaleSelect
             int i = getItemIndex(mLocaleSpinner, LocaleString.getDisplay(locale));
             mLocaleSpinner.setSelection(i);
             mSelectedLocaleResources = mRepo.loadResources(locale);
+            mResourcesLocale.put(mSelectedLocaleResources, locale);
         } else {
             mSelectedLocaleResources = null;
         }
@@ -1255,10 +1330,54 @@ public class TranslateActivity extends AppCompatActivity implements LocaleSelect
             mOriginalStringTextView.setText(mSelectedResource.getContent());
             mTranslatedStringEditText.setText(mSelectedLocaleResources.getContent(resourceId));
         }
+        updateOtherTranslations();
         checkPreviousNextVisibility();
         updateProgress();
     }
 
+    // Shows how the selected string was translated into other languages, which may help
+    // while typing its translation. The index may need to parse some locales, so the
+    // translations are looked up in the background
+    private void updateOtherTranslations() {
+        mOtherTranslationsTextView.setVisibility(View.GONE);
+        if (mSelectedResource == null || mSelectedLocale == null)
+            return;
+
+        final String resourceId = mSelectedResource.getId();
+        final String locale = mSelectedLocale;
+        new AsyncTask<Void, Void, LinkedHashMap<String, String>>() {
+            @Override
+            protected LinkedHashMap<String, String> doInBackground(Void... params) {
+                return mRepo.getCrossLocaleIndex().getTranslations(resourceId, locale);
+            }
+
+            @Override
+            protected void onPostExecute(LinkedHashMap<String, String> translations) {
+                // The selection may have changed meanwhile
+                if (isFinishing() || translations.isEmpty() || mSelectedResource == null ||
+                        !resourceId.equals(mSelectedResource.getId()) ||
+                        !locale.equals(mSelectedLocale))
+                    return;
+
+                final StringBuilder sb = new StringBuilder();
+                int count = 0;
+                for (Map.Entry<String, String> translation : translations.entrySet()) {
+                    if (count++ == MAX_OTHER_TRANSLATIONS)
+                        break;
+                    if (sb.length() != 0)
+                        sb.append('\n');
+                    // Only their first line, so more languages fit
+                    final String content = translation.getValue();
+                    final int newline = content.indexOf('\n');
+                    sb.append(translation.getKey()).append(": ")
+                            .append(newline == -1 ? content : content.substring(0, newline) + "\u2026");
+                }
+                mOtherTranslationsTextView.setText(sb);
+                mOtherTranslationsTextView.setVisibility(View.VISIBLE);
+            }
+        }.execute();
+    }
+
     private void checkPreviousNextVisibility() {
         int count = mStringIdSpinner.getCount();
         boolean showDone;
@@ -34,12 +34,8 @@ public class RepoSyncTask extends Thread {
                 RepoHandlerHelper.syncResources(mContext, mRepo, mSource, new Messenger.OnSyncProgress() {
                     @Override
                     public void onUpdate(final int stage, final float progress) {
-                        mHandler.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                onProgressUpdate(stage, progress);
-                            }
-                        });
+                        // The Messenger coalesces these, there's no need to post every update
+                        onProgressUpdate(stage, progress);
                     }
                 });
 
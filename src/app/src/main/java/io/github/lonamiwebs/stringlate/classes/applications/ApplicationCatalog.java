@@ -0,0 +1,252 @@
+package io.github.lonamiwebs.stringlate.classes.applications;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+// Compact binary catalog of the applications in the F-Droid index, holding only
+// the fields we need. It's memory mapped when opened, so nothing has to be parsed
+// at startup, and only the applications actually shown are ever decoded.
+//
+// Layout (big endian):
+//   int magic, int version, int count
+//   int offsets[count]            (absolute position of each record)
+//   records[count]:
+//     long lastUpdated            (milliseconds since epoch, or -1 if unknown)
+//     string packageName, name, description, iconUrl, sourceCodeUrl, webUrl, mail
+// where every string is an int length followed by as many UTF-8 bytes.
+class ApplicationCatalog {
+
+    //region Members
+
+    private static final int MAGIC = 0x534c4143; // "SLAC"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 3 * 4;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer mBuffer;
+    private final int mCount;
+
+    //endregion
+
+    //region Constructor
+
+    private ApplicationCatalog(final ByteBuffer buffer) {
+        mBuffer = buffer;
+        mCount = buffer.getInt(8);
+    }
+
+    // Maps the catalog file into memory, returning null if it
+    // doesn't exist or wasn't written by this version of the code
+    static ApplicationCatalog open(final File file) {
+        if (!file.isFile() || file.length() < HEADER_SIZE)
+            return null;
+
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            // The mapping stays valid even after the channel is closed
+            final MappedByteBuffer buffer = raf.getChannel()
+                    .map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+                return null;
+
+            final int count = buffer.getInt(8);
+            if (count < 0 || HEADER_SIZE + 4L * count > buffer.limit())
+                return null;
+
+            return new ApplicationCatalog(buffer);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    //endregion
+
+    //region Reading
+
+    int size() {
+        return mCount;
+    }
+
+    ApplicationDetails get(final int index) {
+        int position = getRecordPosition(index);
+        final ApplicationDetails app = new ApplicationDetails();
+        final long lastUpdated = mBuffer.getLong(position);
+        position += 8;
+        if (lastUpdated != -1)
+            app.setLastUpdated(new Date(lastUpdated));
+
+        final String[] strings = new String[7];
+        for (int i = 0; i < strings.length; ++i) {
+            final int length = mBuffer.getInt(position);
+            strings[i] = readString(position + 4, length);
+            position += 4 + length;
+        }
+        app.setPackageName(strings[0]);
+        app.setProjectName(strings[1]);
+        app.setDescription(strings[2]);
+        app.setIconUrl(strings[3]);
+        app.setSourceCodeUrl(strings[4]);
+        app.setProjectWebUrl(strings[5]);
+        app.setProjectMail(strings[6]);
+        return app;
+    }
+
+    // Cheaper than get(index) when only these are needed
+    String getPackageName(final int index) {
+        return getString(index, 0);
+    }
+
+    String getProjectName(final int index) {
+        return getString(index, 1);
+    }
+
+    String getDescription(final int index) {
+        return getString(index, 2);
+    }
+
+    long getLastUpdated(final int index) {
+        return mBuffer.getLong(getRecordPosition(index));
+    }
+
+    // The raw record, so it can be copied as-is into a new catalog
+    byte[] getRecord(final int index) {
+        final int position = getRecordPosition(index);
+        final int end = index + 1 < mCount ? getRecordPosition(index + 1) : mBuffer.limit();
+        final byte[] record = new byte[end - position];
+        final ByteBuffer buffer = mBuffer.duplicate();
+        buffer.position(position);
+        buffer.get(record);
+        return record;
+    }
+
+    private int getRecordPosition(final int index) {
+        if (index < 0 || index >= mCount)
+            throw new IndexOutOfBoundsException("index " + index + ", size " + mCount);
+
+        return mBuffer.getInt(HEADER_SIZE + 4 * index);
+    }
+
+    // Reads the n-th string of the record, skipping the ones before it
+    private String getString(final int index, final int n) {
+        int position = getRecordPosition(index) + 8;
+        for (int i = 0; i < n; ++i)
+            position += 4 + mBuffer.getInt(position);
+        return readString(position + 4, mBuffer.getInt(position));
+    }
+
+    private String readString(final int position, final int length) {
+        final byte[] bytes = new byte[length];
+        // A duplicate has its own position, so concurrent readers don't interfere
+        final ByteBuffer buffer = mBuffer.duplicate();
+        buffer.position(position);
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    //endregion
+
+    //region Writing
+
+    // Writes the applications in the order given. The file is replaced
+    // atomically, so a catalog that's already mapped remains valid.
+    static boolean write(final Collection<ApplicationDetails> apps, final File file) {
+        final ArrayList<byte[]> records = new ArrayList<>(apps.size());
+        for (ApplicationDetails app : apps)
+            records.add(encode(app));
+        return write(records, file);
+    }
+
+    // Same as above, but with records already encoded (or taken from another catalog)
+    static boolean write(final List<byte[]> records, final File file) {
+        final File tmpFile = new File(file.getPath() + ".tmp");
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs())
+            return false;
+
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(records.size());
+
+            int offset = HEADER_SIZE + 4 * records.size();
+            for (byte[] record : records) {
+                out.writeInt(offset);
+                offset += record.length;
+            }
+            for (byte[] record : records)
+                out.write(record);
+
+            out.close();
+            out = null;
+
+            return tmpFile.renameTo(file) || (file.delete() && tmpFile.renameTo(file));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+            }
+            if (tmpFile.exists() && !tmpFile.delete())
+                tmpFile.deleteOnExit();
+        }
+    }
+
+    static byte[] encode(final ApplicationDetails app) {
+        final byte[][] strings = new byte[][]{
+                encode(app.getPackageName()), encode(app.getProjectName()),
+                encode(app.getDescription()), encode(app.getIconUrl()),
+                encode(app.getSourceCodeUrl()), encode(app.getProjectWebUrl()),
+                encode(app.getProjectMail())
+        };
+        int length = 8;
+        for (byte[] string : strings)
+            length += 4 + string.length;
+
+        final ByteBuffer record = ByteBuffer.allocate(length);
+        record.putLong(getTime(app));
+        for (byte[] string : strings) {
+            record.putInt(string.length);
+            record.put(string);
+        }
+        return record.array();
+    }
+
+    static long getTime(final ApplicationDetails app) {
+        return app.getLastUpdated() == null ? -1 : app.getLastUpdated().getTime();
+    }
+
+    private static byte[] encode(final String string) {
+        return string == null ? new byte[0] : string.getBytes(UTF8);
+    }
+
+    //endregion
+}
@@ -6,23 +6,27 @@ import android.content.pm.PackageManager;
 import android.support.annotation.NonNull;
 
 import net.gsantner.opoc.util.Callback;
-import net.gsantner.opoc.util.NetworkUtils;
-import net.gsantner.opoc.util.ZipUtils;
 
 import org.xmlpull.v1.XmlPullParserException;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import io.github.lonamiwebs.stringlate.classes.Messenger;
+import io.github.lonamiwebs.stringlate.classes.net.HttpClient;
 
 public class ApplicationList implements Iterable<ApplicationDetails> {
     public final static String FDROID_REPO_URL = "https://f-droid.org/repo";
@@ -34,14 +38,24 @@ public class ApplicationList implements Iterable<ApplicationDetails> {
     private final Context mContext;
 
     private static final String BASE_DIR = "index";
-
-    private ArrayList<ApplicationDetails> mApplications;
+    private static final String CATALOG_FILE = "catalog.bin";
+    private static final String INDEX_ENTRY = "index.xml";
+
+    // Applications are decoded from the catalog as they're needed,
+    // in the order given by the catalog indices in mOrder
+    private ApplicationCatalog mCatalog;
+    private int[] mOrder;
+    private int mInstalledCount;
     private final HashSet<String> mInstalledPackages;
 
+    // Finds applications by their position in mOrder
+    private ApplicationSearchIndex mSearchIndex;
+
     // Keep track of a filtered slice, so ListViews can have a "Show more"
     private ArrayList<ApplicationDetails> mApplicationsSlice;
     @NonNull
     private String mSliceFilter;
+    private int[] mSliceMatches; // null if there is no filter
     private int mLastSliceIndex;
 
     //endregion
@@ -49,7 +63,7 @@ public class ApplicationList implements Iterable<ApplicationDetails> {
     //region Initialization
 
     public ApplicationList(Context context) {
-        mApplications = new ArrayList<>();
+        mOrder = new int[0];
         mContext = context;
         mSliceFilter = "";
 
@@ -69,126 +83,269 @@ public class ApplicationList implements Iterable<ApplicationDetails> {
 
     //region Getters
 
-    // Gets a new slice with the given filter for the application name
+    // Gets a new slice with the given filter for the application name or description
     public ArrayList<ApplicationDetails> newSlice(@NonNull String filter) {
         mApplicationsSlice = new ArrayList<>();
-        mSliceFilter = filter.trim().toLowerCase();
+        mSliceFilter = filter.trim();
         mLastSliceIndex = 0;
 
+        // The matches are found all at once (which is cheap with the index),
+        // and then the slice is increased by decoding only the ones shown
+        mSliceMatches = mSliceFilter.isEmpty() || mSearchIndex == null
+                ? null : mSearchIndex.search(mSliceFilter);
+
         return mApplicationsSlice;
     }
 
     // Increases the previously retrieved slice by count,
     // returning true if this method can be called again
     public boolean increaseSlice(int count) {
-        if (mLastSliceIndex >= mApplications.size())
-            return false;
-
-        int end;
-        if (mSliceFilter.isEmpty()) {
-            end = mLastSliceIndex + count;
-            if (end >= mApplications.size())
-                end = mApplications.size();
-
-            for (; mLastSliceIndex < end; mLastSliceIndex++) {
-                mApplicationsSlice.add(mApplications.get(mLastSliceIndex));
-            }
-        } else {
-            end = mApplications.size();
-
-            for (; mLastSliceIndex < end && count > 0; mLastSliceIndex++) {
-                ApplicationDetails app = mApplications.get(mLastSliceIndex);
-                if (app.getProjectName().toLowerCase().contains(mSliceFilter) ||
-                        app.getDescription().toLowerCase().contains(mSliceFilter)) {
-                    mApplicationsSlice.add(app);
-                    count--;
-                }
-            }
+        if (!mSliceFilter.isEmpty() && mSliceMatches == null)
+            return false; // Nothing loaded to search in
+
+        final int size = mSliceMatches == null ? mOrder.length : mSliceMatches.length;
+        final int end = Math.min(size, mLastSliceIndex + count);
+        for (; mLastSliceIndex < end; mLastSliceIndex++) {
+            mApplicationsSlice.add(getApplication(mSliceMatches == null
+                    ? mLastSliceIndex : mSliceMatches[mLastSliceIndex]));
         }
 
         // Return true if this method can be called again
-        return mLastSliceIndex < mApplications.size();
+        return mLastSliceIndex < size;
     }
 
     //endregion
 
     public boolean syncRepo(final Messenger.OnSyncProgress callback) {
-        // Step 1: Download the index.jar
+        // Step 1: Download the index.jar, unless it didn't change since the last time
         callback.onUpdate(1, 0f);
-        NetworkUtils.downloadFile(FDROID_INDEX_URL, getIndexFile("jar"), new Callback.a1<Float>() {
-            @Override
-            public void callback(Float progress) {
-                callback.onUpdate(1, progress);
-            }
-        });
+        final File jarFile = getIndexFile("jar");
+        final File validatorFile = getIndexFile("validator");
+        if (!getCatalogFile().isFile() && validatorFile.isFile() && !validatorFile.delete())
+            return false; // We need the whole index even if it didn't change
+
+        final int downloaded = HttpClient.getDefault().downloadIfModified(
+                FDROID_INDEX_URL, jarFile, validatorFile, new Callback.a1<Float>() {
+                    @Override
+                    public void callback(Float progress) {
+                        callback.onUpdate(1, progress);
+                    }
+                });
+        if (downloaded == HttpClient.DOWNLOAD_NOT_MODIFIED) {
+            callback.onUpdate(4, 1f);
+            return true;
+        }
+        if (downloaded != HttpClient.DOWNLOAD_DONE)
+            return false;
 
-        // Step 2: Extract the index.xml from the index.jar, then delete the index.jar
+        // Step 2: Parse the index.xml straight from the index.jar, without extracting it
         callback.onUpdate(2, 0f);
-        ZipUtils.unzip(getIndexFile("jar"), mRoot, true, new Callback.a1<Float>() {
+        final ArrayList<ApplicationDetails> apps = readIndexJar(jarFile, new Callback.a1<Float>() {
             @Override
             public void callback(Float progress) {
                 callback.onUpdate(2, progress);
             }
         });
-        if (!getIndexFile("jar").delete())
+        if (!jarFile.delete())
+            jarFile.deleteOnExit();
+        if (apps == null) {
+            // Don't skip the next synchronization because of this one's validator
+            if (validatorFile.exists() && !validatorFile.delete())
+                validatorFile.deleteOnExit();
             return false;
+        }
 
-        // Step 3, load the xml and lose non-required information, then save it minimized
+        // Step 3: Apply whatever changed to the catalog
         callback.onUpdate(3, 0f);
-        if (!loadIndexXml())
+        final int changes = updateCatalog(apps, new Callback.a1<Float>() {
+            @Override
+            public void callback(Float progress) {
+                callback.onUpdate(3, progress);
+            }
+        });
+        if (changes < 0)
             return false;
 
-        try {
-            // Save index.xml
-            callback.onUpdate(4, 0f);
-            ApplicationListParser.parseToXml(
-                    this, new FileOutputStream(getIndexFile("xml"))
-            );
-        } catch (IOException e) {
-            e.printStackTrace();
+        // Step 4: Load the new catalog
+        callback.onUpdate(4, 0f);
+        return changes == 0 || loadIndexXml();
+    }
+
+    // Loads the catalog of applications saved by the last synchronization.
+    // This only maps it into memory, applications are decoded when needed.
+    public boolean loadIndexXml() {
+        final File legacyXml = getIndexFile("xml");
+        if (legacyXml.isFile()) {
+            // Older versions saved a minimized index.xml instead, convert it once
+            try {
+                writeCatalog(ApplicationListParser.parseFromXml(new FileInputStream(legacyXml)));
+            } catch (IOException | XmlPullParserException e) {
+                e.printStackTrace();
+            }
+            if (!legacyXml.delete())
+                legacyXml.deleteOnExit();
+        }
+
+        final ApplicationCatalog catalog = ApplicationCatalog.open(getCatalogFile());
+        if (catalog == null) {
+            mCatalog = null;
+            mOrder = new int[0];
+            mInstalledCount = 0;
+            mSearchIndex = null;
             return false;
         }
 
-        // Done
+        // The catalog is sorted alphabetically, but the installed applications go first
+        final int[] order = new int[catalog.size()];
+        int installed = 0;
+        for (int i = 0; i < order.length; ++i) {
+            if (mInstalledPackages.contains(catalog.getPackageName(i)))
+                order[installed++] = i;
+        }
+        int next = installed;
+        for (int i = 0; i < order.length; ++i) {
+            if (!mInstalledPackages.contains(catalog.getPackageName(i)))
+                order[next++] = i;
+        }
+
+        final String[] names = new String[order.length];
+        final String[] descriptions = new String[order.length];
+        for (int i = 0; i < order.length; ++i) {
+            names[i] = catalog.getProjectName(order[i]);
+            descriptions[i] = catalog.getDescription(order[i]);
+        }
+
+        mCatalog = catalog;
+        mOrder = order;
+        mInstalledCount = installed;
+        mSearchIndex = new ApplicationSearchIndex(names, descriptions);
         return true;
     }
 
-    public boolean loadIndexXml() {
+    private static ArrayList<ApplicationDetails> readIndexJar(final File jarFile,
+                                                              final Callback.a1<Float> progress) {
+        ZipInputStream zip = null;
         try {
-            File file = getIndexFile("xml");
-            if (file.isFile()) {
-                mApplications = ApplicationListParser.parseFromXml(
-                        new FileInputStream(getIndexFile("xml")),
-                        mInstalledPackages);
-
-                // Also sort the applications alphabetically, installed first
-                Collections.sort(mApplications, new Comparator<ApplicationDetails>() {
-                    @Override
-                    public int compare(ApplicationDetails t1, ApplicationDetails t2) {
-                        if (t1.isInstalled() == t2.isInstalled()) {
-                            return t1.getProjectName().compareToIgnoreCase(t2.getProjectName());
-                        } else {
-                            return t1.isInstalled() ? -1 : 1;
-                        }
+            final float invLength = 1f / jarFile.length();
+            zip = new ZipInputStream(new BufferedInputStream(new FilterInputStream(new FileInputStream(jarFile)) {
+                long read;
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    final int count = super.read(b, off, len);
+                    if (count > 0) {
+                        read += count;
+                        progress.callback(read * invLength);
                     }
-                });
-                return true;
-            } else {
-                mApplications.clear();
+                    return count;
+                }
+            }));
+
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (entry.getName().equals(INDEX_ENTRY))
+                    return ApplicationListParser.parseFromXml(zip);
             }
         } catch (IOException | XmlPullParserException e) {
-            // Won't happen
             e.printStackTrace();
+        } finally {
+            if (zip != null) {
+                try {
+                    zip.close();
+                } catch (IOException ignored) {
+                }
+            }
         }
-        return false;
+        return null;
+    }
+
+    private boolean writeCatalog(final ArrayList<ApplicationDetails> apps) {
+        sortByName(apps);
+        return ApplicationCatalog.write(apps, getCatalogFile());
+    }
+
+    // Diffs the new index against the current catalog by package name and last update,
+    // so that only the applications which were added or updated need to be encoded,
+    // while the rest are copied as they were. Returns how many applications changed
+    // (0 if the catalog didn't need to be written at all) or -1 on failure.
+    private int updateCatalog(final ArrayList<ApplicationDetails> apps,
+                              final Callback.a1<Float> progress) {
+        final ApplicationCatalog old = ApplicationCatalog.open(getCatalogFile());
+        if (old == null)
+            return writeCatalog(apps) ? apps.size() : -1;
+
+        final HashMap<String, Integer> oldIndices = new HashMap<>(old.size() * 2);
+        for (int i = 0; i < old.size(); ++i)
+            oldIndices.put(old.getPackageName(i), i);
+
+        sortByName(apps);
+        final ArrayList<byte[]> records = new ArrayList<>(apps.size());
+        int changes = 0;
+        for (int i = 0; i < apps.size(); ++i) {
+            final ApplicationDetails app = apps.get(i);
+            final Integer oldIndex = oldIndices.remove(app.getPackageName());
+            if (oldIndex != null && old.getLastUpdated(oldIndex) == ApplicationCatalog.getTime(app)) {
+                records.add(old.getRecord(oldIndex));
+            } else {
+                records.add(ApplicationCatalog.encode(app));
+                changes++;
+            }
+            progress.callback((i + 1f) / apps.size());
+        }
+
+        // Whatever is left in the old catalog was removed from the index
+        changes += oldIndices.size();
+        if (changes == 0)
+            return 0;
+
+        return ApplicationCatalog.write(records, getCatalogFile()) ? changes : -1;
+    }
+
+    private static void sortByName(final ArrayList<ApplicationDetails> apps) {
+        Collections.sort(apps, new Comparator<ApplicationDetails>() {
+            @Override
+            public int compare(ApplicationDetails t1, ApplicationDetails t2) {
+                return t1.getProjectName().compareToIgnoreCase(t2.getProjectName());
+            }
+        });
     }
 
     private File getIndexFile(String extension) {
         return new File(mRoot, "index." + extension);
     }
 
+    private File getCatalogFile() {
+        return new File(mRoot, CATALOG_FILE);
+    }
+
+    private ApplicationDetails getApplication(final int index) {
+        final ApplicationDetails app = mCatalog.get(mOrder[index]);
+        if (index < mInstalledCount)
+            app.setInstalled();
+        return app;
+    }
+
     @Override
     public Iterator<ApplicationDetails> iterator() {
-        return mApplications.iterator();
+        return new Iterator<ApplicationDetails>() {
+            int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < mOrder.length;
+            }
+
+            @Override
+            public ApplicationDetails next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return getApplication(index++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
     }
 }
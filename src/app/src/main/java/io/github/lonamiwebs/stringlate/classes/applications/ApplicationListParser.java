@@ -5,13 +5,10 @@ import android.util.Xml;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
-import org.xmlpull.v1.XmlSerializer;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.HashSet;
 
 import static io.github.lonamiwebs.stringlate.classes.applications.ApplicationList.FDROID_REPO_URL;
 
@@ -22,7 +19,7 @@ class ApplicationListParser {
     private static final String NAME = "name";
     private static final String DESCRIPTION = "summary";
     private static final String ICON = "icon";
-    private static final String ICON_URL = "sl_iconurl";
+    private static final String ICON_URL = "sl_iconurl"; // Used by the old minimized index.xml
     private static final String SOURCE_URL = "source";
     private static final String WEB = "web";
     private static final String MAIL = "email";
@@ -33,7 +30,9 @@ class ApplicationListParser {
 
     //region Xml -> ApplicationsList
 
-    static ArrayList<ApplicationDetails> parseFromXml(InputStream in, HashSet<String> installedPackages)
+    // Reads the applications from the given stream, which may very well
+    // be the index.xml entry of the index.jar, straight as it's read
+    static ArrayList<ApplicationDetails> parseFromXml(InputStream in)
             throws XmlPullParserException, IOException {
 
         try {
@@ -42,14 +41,7 @@ class ApplicationListParser {
             parser.setInput(in, null);
             parser.nextTag();
 
-            ArrayList<ApplicationDetails> apps = readFdroid(parser);
-            // Now set which applications are installed on the device
-            for (ApplicationDetails app : apps) {
-                if (installedPackages.contains(app.getPackageName()))
-                    app.setInstalled();
-            }
-
-            return apps;
+            return readFdroid(parser);
         } finally {
             try {
                 in.close();
@@ -161,51 +153,6 @@ class ApplicationListParser {
 
     //endregion
 
-    //region ApplicationList -> Xml
-
-    static boolean parseToXml(ApplicationList applications, OutputStream out) {
-        XmlSerializer serializer = Xml.newSerializer();
-        try {
-            serializer.setOutput(out, "UTF-8");
-            serializer.startTag(ns, "fdroid");
-
-            for (ApplicationDetails app : applications) {
-                serializer.startTag(ns, "application");
-
-                writeTag(serializer, ID, app.getPackageName());
-                writeTag(serializer, LAST_UPDATED, app.getLastUpdatedDateString());
-                writeTag(serializer, NAME, app.getProjectName());
-                writeTag(serializer, DESCRIPTION, app.getDescription());
-                writeTag(serializer, ICON_URL, app.getIconUrl());
-                writeTag(serializer, SOURCE_URL, app.getSourceCodeUrl());
-                writeTag(serializer, WEB, app.getProjectWebUrl());
-                writeTag(serializer, MAIL, app.getProjectMail());
-
-                serializer.endTag(ns, "application");
-            }
-            serializer.endTag(ns, "fdroid");
-            serializer.flush();
-            return true;
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
-        }
-    }
-
-    private static void writeTag(XmlSerializer serializer, String tag, String content)
-            throws IOException {
-        serializer.startTag(ns, tag);
-        try {
-            serializer.text(content);
-        } catch (IllegalArgumentException exception){
-            // XML Parser internal broken on pre LL
-            serializer.text("");
-        }
-        serializer.endTag(ns, tag);
-    }
-
-    //endregion
-
     public static void loadFDroidIconPath(Context context) {
         final double dpi = context.getResources().getDisplayMetrics().densityDpi;
         String iconDir = ApplicationList.FDROID_ICONS_DIR_FALLBACK;
@@ -0,0 +1,200 @@
+package io.github.lonamiwebs.stringlate.classes.applications;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+// Trigram index over the (normalized) name and description of the applications,
+// built once when the catalog is loaded. A query only has to look at those
+// applications which contain every trigram of the filter, instead of lowercasing
+// and scanning every single application on every key stroke.
+//
+// Applications are identified by their position in the list (0..count-1),
+// and results keep this order for applications with the same rank.
+class ApplicationSearchIndex {
+
+    //region Members
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final int[] NO_RESULTS = new int[0];
+
+    // Ranks, from best to worst
+    private static final int RANK_NAME_PREFIX = 0;
+    private static final int RANK_NAME_WORD = 1;
+    private static final int RANK_NAME = 2;
+    private static final int RANK_DESCRIPTION = 3;
+    private static final int RANK_COUNT = 4;
+
+    private final String[] mNames;
+    private final String[] mDescriptions;
+
+    // Sorted positions of the applications containing each trigram
+    private final HashMap<Long, int[]> mPostings;
+
+    //endregion
+
+    //region Constructor
+
+    ApplicationSearchIndex(final String[] names, final String[] descriptions) {
+        mNames = new String[names.length];
+        mDescriptions = new String[descriptions.length];
+
+        // Positions are visited in order, so the posting lists end up sorted
+        final HashMap<Long, IntList> postings = new HashMap<>();
+        for (int i = 0; i < names.length; ++i) {
+            mNames[i] = normalize(names[i]);
+            mDescriptions[i] = normalize(descriptions[i]);
+            addTrigrams(postings, mNames[i], i);
+            addTrigrams(postings, mDescriptions[i], i);
+        }
+
+        mPostings = new HashMap<>(postings.size() * 2);
+        for (HashMap.Entry<Long, IntList> entry : postings.entrySet())
+            mPostings.put(entry.getKey(), entry.getValue().toArray());
+    }
+
+    //endregion
+
+    //region Searching
+
+    // Returns the positions of the applications whose name or description contain
+    // the filter (ignoring case and accents), best matches first. An empty filter
+    // is not a valid query, since it would simply match every application.
+    int[] search(final String filter) {
+        final String query = normalize(filter);
+        if (query.isEmpty())
+            return NO_RESULTS;
+
+        final int[] candidates = query.length() < 3 ? null : getCandidates(query);
+        if (candidates != null && candidates.length == 0)
+            return NO_RESULTS;
+
+        // Bucket the matches by rank, which keeps the original order within each
+        final IntList[] ranked = new IntList[RANK_COUNT];
+        for (int i = 0; i < ranked.length; ++i)
+            ranked[i] = new IntList();
+
+        final int count = candidates == null ? mNames.length : candidates.length;
+        for (int i = 0; i < count; ++i) {
+            final int position = candidates == null ? i : candidates[i];
+            final int rank = rank(position, query);
+            if (rank != -1)
+                ranked[rank].add(position);
+        }
+
+        int size = 0;
+        for (IntList list : ranked)
+            size += list.size;
+
+        final int[] result = new int[size];
+        size = 0;
+        for (IntList list : ranked) {
+            System.arraycopy(list.items, 0, result, size, list.size);
+            size += list.size;
+        }
+        return result;
+    }
+
+    // Positions of the applications containing every trigram of the query. These
+    // still have to be verified, since the trigrams may appear in another order.
+    private int[] getCandidates(final String query) {
+        final int[][] lists = new int[query.length() - 2][];
+        for (int i = 0; i < lists.length; ++i) {
+            lists[i] = mPostings.get(trigram(query, i));
+            if (lists[i] == null)
+                return NO_RESULTS;
+        }
+
+        // Start with the rarest trigrams, so the intersections shrink quickly
+        Arrays.sort(lists, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] a, int[] b) {
+                return a.length - b.length;
+            }
+        });
+        int[] result = lists[0];
+        for (int i = 1; i < lists.length && result.length != 0; ++i)
+            result = intersect(result, lists[i]);
+        return result;
+    }
+
+    private int rank(final int position, final String query) {
+        final String name = mNames[position];
+        final int index = name.indexOf(query);
+        if (index == 0)
+            return RANK_NAME_PREFIX;
+        if (index > 0)
+            return Character.isLetterOrDigit(name.charAt(index - 1)) ? RANK_NAME : RANK_NAME_WORD;
+        return mDescriptions[position].contains(query) ? RANK_DESCRIPTION : -1;
+    }
+
+    //endregion
+
+    //region Utilities
+
+    static String normalize(final String text) {
+        if (text == null)
+            return "";
+
+        // Decompose accented characters and drop the accents, so they can be omitted
+        final String decomposed = Normalizer.normalize(text.trim(), Normalizer.Form.NFD);
+        return DIACRITICS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ENGLISH);
+    }
+
+    private static long trigram(final String text, final int i) {
+        return ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+    }
+
+    private static void addTrigrams(final HashMap<Long, IntList> postings,
+                                    final String text, final int position) {
+        for (int i = 0; i + 3 <= text.length(); ++i) {
+            final Long trigram = trigram(text, i);
+            IntList list = postings.get(trigram);
+            if (list == null) {
+                list = new IntList();
+                postings.put(trigram, list);
+            }
+            // The same trigram may appear many times in a single application
+            if (list.size == 0 || list.items[list.size - 1] != position)
+                list.add(position);
+        }
+    }
+
+    private static int[] intersect(final int[] a, final int[] b) {
+        final int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, size = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    // Growable list of ints, to avoid boxing every position
+    private static class IntList {
+        int[] items = new int[4];
+        int size;
+
+        void add(final int item) {
+            if (size == items.length)
+                items = Arrays.copyOf(items, size * 2);
+            items[size++] = item;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(items, size);
+        }
+    }
+
+    //endregion
+}
@@ -27,7 +27,7 @@ public class ApplicationsSyncTask extends Thread {
         return syncingLock.isLocked();
     }
 
-    public static float progress;
+    public static volatile float progress;
 
     private ApplicationsSyncTask(final ApplicationList appList) {
         mApplicationList = appList;
@@ -39,12 +39,8 @@ public class ApplicationsSyncTask extends Thread {
         final boolean okay = mApplicationList.syncRepo(new Messenger.OnSyncProgress() {
             @Override
             public void onUpdate(final int stage, final float progress) {
-                mHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        onProgressUpdate(stage, progress);
-                    }
-                });
+                // The Messenger coalesces these, there's no need to post every update
+                onProgressUpdate(stage, progress);
             }
         });
 
@@ -59,7 +55,7 @@ public class ApplicationsSyncTask extends Thread {
 
     private void onProgressUpdate(final int stage, float progress) {
         // Four stages, simply to a linear interpolation
-        ApplicationsSyncTask.progress = (stage - 1f) / 3f + progress * 0.25f;
+        ApplicationsSyncTask.progress = (stage - 1f + progress) * 0.25f;
         Messenger.notifyApplicationSync(ApplicationsSyncTask.progress);
     }
 }
@@ -11,8 +11,6 @@ import android.os.Handler;
 import android.util.Pair;
 import android.widget.ImageView;
 
-import net.gsantner.opoc.util.NetworkUtils;
-
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -23,6 +21,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import io.github.lonamiwebs.stringlate.R;
+import io.github.lonamiwebs.stringlate.classes.net.HttpClient;
 
 // Original code at https://github.com/thest1/LazyList (http://stackoverflow.com/a/3068012/4759433)
 public class ImageLoader {
@@ -127,7 +126,7 @@ public class ImageLoader {
             }
         }
         if (!f.isFile() && mAllowInternetDownload) {
-            if (!NetworkUtils.downloadFile(url, f))
+            if (!HttpClient.getDefault().download(url, f, null))
                 mMemoryCache.clear();
         }
 
@@ -11,11 +11,25 @@
 package io.github.lonamiwebs.stringlate.utilities;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.Nullable;
 import android.support.annotation.StringRes;
 import android.widget.Toast;
 
+import java.util.concurrent.Executor;
+
 public class ContextUtils extends net.gsantner.opoc.util.ContextUtils {
+    // Runs everything on the UI thread, e.g. Messenger listeners which update views
+    public static final Executor MAIN_THREAD = new Executor() {
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable runnable) {
+            mHandler.post(runnable);
+        }
+    };
+
     public ContextUtils(Context context) {
         super(context);
     }
@@ -0,0 +1,138 @@
+package io.github.lonamiwebs.stringlate.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import io.github.lonamiwebs.stringlate.classes.Messenger;
+import io.github.lonamiwebs.stringlate.classes.repos.RepoHandler;
+import io.github.lonamiwebs.stringlate.classes.repos.RepoProgress;
+import io.github.lonamiwebs.stringlate.classes.resources.Resources;
+import io.github.lonamiwebs.stringlate.classes.sources.LocalDirectorySource;
+
+// Keeps a repository in sync with a local checkout while it's being edited. Whenever
+// the resources of the checkout change, the repository is synced again, which only
+// re-parses the files which changed (and the indices are rebuilt when next used), and
+// only the progress of the locales which changed is calculated again. Changing the
+// default resources still means every locale is merged and calculated again.
+class LiveReload {
+
+    // Editors often save a file in several steps, so wait until they're done
+    private static final long SETTLE_MS = 100;
+
+    private static final int ICON_DPI = 480;
+
+    private final LocalDirectorySource mSource;
+    private final RepoHandler mRepo;
+    private Resources mDefaultResources;
+    private final Messenger.OnSyncProgress mCallback = new Messenger.OnSyncProgress() {
+        @Override
+        public void onUpdate(int stage, float progress) {
+        }
+    };
+
+    LiveReload(final File dir, final File workDir, final File cacheDir) {
+        mSource = new LocalDirectorySource(dir);
+        mRepo = new RepoHandler(dir.getAbsoluteFile().toURI().toString(), workDir, cacheDir);
+    }
+
+    // Never returns unless watching fails
+    void run() throws IOException, InterruptedException {
+        final WatchService watcher = FileSystems.getDefault().newWatchService();
+        try {
+            register(watcher, mSource.getDirectory());
+            sync(true);
+
+            while (true) {
+                final ArrayList<File> changed = new ArrayList<>();
+                boolean overflow = false;
+                WatchKey key = watcher.take();
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            overflow = true;
+                            continue;
+                        }
+
+                        final File file = ((Path) key.watchable()).resolve((Path) event.context()).toFile();
+                        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && file.isDirectory())
+                            register(watcher, file);
+
+                        changed.add(file);
+                    }
+                    key.reset();
+                    key = watcher.poll(SETTLE_MS, TimeUnit.MILLISECONDS);
+                }
+
+                if (overflow) {
+                    // Some events were lost, so we don't know what changed
+                    mSource.rescan();
+                    sync(true);
+                } else if (mSource.filesChanged(changed)) {
+                    sync(false);
+                }
+            }
+        } catch (ClosedWatchServiceException ignored) {
+        } finally {
+            watcher.close();
+        }
+    }
+
+    // Directories are watched one by one, so every directory under dir is registered
+    private static void register(final WatchService watcher, final File dir) throws IOException {
+        if (dir.getName().startsWith("."))
+            return; // Hidden directories are never searched for resources
+
+        dir.toPath().register(watcher,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+
+        final File[] children = dir.listFiles();
+        if (children != null) {
+            for (File child : children)
+                if (child.isDirectory())
+                    register(watcher, child);
+        }
+    }
+
+    // A full sync is needed when it's unknown what changed. Otherwise, the blob store isn't
+    // collected (which would scan the whole work directory on every save) until the next one
+    private void sync(final boolean full) {
+        final long start = System.currentTimeMillis();
+        final boolean ok = mRepo.syncResources(mSource, ICON_DPI, mCallback, full);
+        // Taken after syncing, since the first sync (or a rescan) finds every file
+        final HashSet<String> changed = mSource.takeChangedLocales();
+        if (!ok) {
+            System.out.println("Could not sync the resources from " + mSource.getDirectory());
+            mDefaultResources = null; // Unknown state, so start over next time
+            return;
+        }
+
+        // The progress of every locale depends on the default resources
+        final boolean all = full || mDefaultResources == null || changed.contains(null);
+        if (all)
+            mDefaultResources = mRepo.loadDefaultResources();
+
+        for (String locale : mRepo.getLocales()) {
+            if (locale.equals(RepoHandler.DEFAULT_LOCALE) || (!all && !changed.contains(locale)))
+                continue;
+
+            final RepoProgress progress =
+                    RepoProgress.calculate(mDefaultResources, mRepo.loadResources(locale));
+            System.out.println(String.format("%s: %d/%d (%.1f%%)", locale,
+                    progress.translatedCount, progress.stringsCount, 100f * progress.getProgress()));
+        }
+        System.out.println(String.format("Synced %s (%d ms).",
+                mSource.getDirectory(), System.currentTimeMillis() - start));
+    }
+}
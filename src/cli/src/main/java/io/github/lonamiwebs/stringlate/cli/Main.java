@@ -1,11 +1,36 @@
 package io.github.lonamiwebs.stringlate.cli;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import io.github.lonamiwebs.stringlate.classes.Messenger;
+import io.github.lonamiwebs.stringlate.classes.repos.RepoHandler;
 import io.github.lonamiwebs.stringlate.classes.resources.ResourceStringComparator;
+import io.github.lonamiwebs.stringlate.classes.resources.TranslationValidator;
 import io.github.lonamiwebs.stringlate.settings.AppSettings;
 
 public class Main {
 
+    private static final int BRANCHES_ICON_DPI = 480;
+
     public static void main(String[] args) {
+        if (args.length == 2 && args[0].equals("validate")) {
+            System.exit(validate(new File(args[1])) ? 0 : 1);
+            return;
+        }
+        if (args.length == 3 && args[0].equals("watch")) {
+            watch(new File(args[1]), new File(args[2]));
+            return;
+        }
+        if (args.length >= 4 && args[0].equals("branches")) {
+            System.exit(syncBranches(new File(args[1]), args[2],
+                    Arrays.asList(args).subList(3, args.length)) ? 0 : 1);
+            return;
+        }
+
         AppSettings appSettings = new AppSettings();
         System.out.println(appSettings.getPathToPropertiesFile());
 
@@ -15,4 +40,65 @@ public class Main {
         appSettings.setDownloadIconsAllowed(true);
         System.out.println("Icons allowed: " + appSettings.isDownloadIconsAllowed());
     }
+
+    // Syncs the resources of the local directory into a repository under workDir,
+    // and keeps doing so whenever they change, until interrupted.
+    private static void watch(final File dir, final File workDir) {
+        final File cacheDir = new File(System.getProperty("java.io.tmpdir"));
+        try {
+            new LiveReload(dir, workDir, cacheDir).run();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    // Fetches the repository at gitUrl once, and syncs the snapshot of every
+    // given branch of its repository under workDir. Returns true on success.
+    private static boolean syncBranches(final File workDir, final String gitUrl,
+                                        final List<String> branches) {
+        final long start = System.currentTimeMillis();
+        final File cacheDir = new File(System.getProperty("java.io.tmpdir"));
+
+        final RepoHandler repo = new RepoHandler(gitUrl, workDir, cacheDir);
+        final List<String> failed = repo.syncBranches(gitUrl, branches, BRANCHES_ICON_DPI,
+                new Messenger.OnSyncProgress() {
+                    @Override
+                    public void onUpdate(int stage, float progress) {
+                    }
+                });
+
+        for (String branch : failed)
+            System.out.println("Could not sync the branch " + branch);
+
+        System.out.println(String.format("Synced %d of %d branch(es) (%d ms).",
+                branches.size() - failed.size(), branches.size(),
+                System.currentTimeMillis() - start));
+        return failed.isEmpty();
+    }
+
+    // Validates the translations of every repository under workDir,
+    // printing any issue found. Returns true if there were none.
+    private static boolean validate(final File workDir) {
+        final long start = System.currentTimeMillis();
+        final File cacheDir = new File(System.getProperty("java.io.tmpdir"));
+
+        int repoCount = 0;
+        int issueCount = 0;
+        for (RepoHandler repo : RepoHandler.listRepositories(workDir, cacheDir)) {
+            repoCount++;
+            for (Map.Entry<String, List<TranslationValidator.Issue>> locale :
+                    TranslationValidator.validateAll(repo).entrySet()) {
+                for (TranslationValidator.Issue issue : locale.getValue()) {
+                    System.out.println(repo.toString() + ": " + issue.toString());
+                    issueCount++;
+                }
+            }
+        }
+
+        System.out.println(String.format("Found %d issue(s) in %d repositories (%d ms).",
+                issueCount, repoCount, System.currentTimeMillis() - start));
+        return issueCount == 0;
+    }
 }
@@ -0,0 +1,205 @@
+package io.github.lonamiwebs.stringlate.classes;
+
+import java.util.HashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// Thread-safe set of listeners used by the Messenger. Adding or removing a listener
+// copies the set, so notifying (which happens far more often) never has to lock it.
+//
+// Every listener is called on the Executor it was added with (or on the thread that
+// notifies, by default). Progress is coalesced per key (e.g. per repository): if it
+// changes faster than the minimum interval, listeners only get the latest value,
+// so any number of concurrent syncs can't flood a listener running on the UI thread.
+public class ListenerSet<L> {
+
+    //region Members
+
+    public interface Event<L> {
+        void dispatch(L listener);
+    }
+
+    public interface ProgressEvent<L, K> {
+        void dispatch(L listener, K key, float progress);
+    }
+
+    public static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    // Shared by every set, only used to wait until progress can be delivered again
+    private static ScheduledExecutorService sScheduler;
+
+    private final CopyOnWriteArrayList<Registration<L>> mRegistrations = new CopyOnWriteArrayList<>();
+    private volatile long mMinProgressIntervalMs;
+
+    //endregion
+
+    //region Constructor
+
+    public ListenerSet(final long minProgressIntervalMs) {
+        mMinProgressIntervalMs = minProgressIntervalMs;
+    }
+
+    //endregion
+
+    //region Listeners
+
+    public void add(final L listener) {
+        add(listener, DIRECT);
+    }
+
+    public void add(final L listener, final Executor executor) {
+        mRegistrations.add(new Registration<>(listener, executor));
+    }
+
+    public boolean remove(final L listener) {
+        for (Registration<L> registration : mRegistrations) {
+            if (registration.listener == listener) {
+                // Events which were already handed to its executor are dropped
+                registration.removed = true;
+                return mRegistrations.remove(registration);
+            }
+        }
+        return false;
+    }
+
+    public void setMinProgressInterval(final long intervalMs) {
+        mMinProgressIntervalMs = intervalMs;
+    }
+
+    //endregion
+
+    //region Notifying
+
+    public void post(final Event<L> event) {
+        for (final Registration<L> registration : mRegistrations) {
+            registration.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!registration.removed)
+                        event.dispatch(registration.listener);
+                }
+            });
+        }
+    }
+
+    public <K> void postProgress(final K key, final float progress, final ProgressEvent<L, K> event) {
+        for (Registration<L> registration : mRegistrations)
+            registration.offer(key, progress, event, mMinProgressIntervalMs);
+    }
+
+    // Drops any progress for the key not delivered yet, e.g. because it finished.
+    // With a serial executor (such as the UI thread), no progress for the key will
+    // be delivered after any event posted after calling this method.
+    public void cancelProgress(final Object key) {
+        for (Registration<L> registration : mRegistrations)
+            registration.drop(key);
+    }
+
+    private static synchronized ScheduledExecutorService getScheduler() {
+        if (sScheduler == null) {
+            sScheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "ListenerSet");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sScheduler;
+    }
+
+    //endregion
+
+    //region Registration
+
+    private static class Registration<L> {
+        final L listener;
+        final Executor executor;
+        volatile boolean removed;
+
+        // Progress not delivered yet, by key
+        private final HashMap<Object, Pending> mPending = new HashMap<>();
+
+        Registration(final L listener, final Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        <K> void offer(final K key, final float progress,
+                       final ProgressEvent<L, K> event, final long minIntervalMs) {
+            final long delay;
+            synchronized (this) {
+                Pending pending = mPending.get(key);
+                if (pending == null) {
+                    pending = new Pending();
+                    mPending.put(key, pending);
+                }
+                pending.progress = progress;
+                pending.event = event;
+                if (pending.scheduled)
+                    return; // The delivery already scheduled will pick up this value
+
+                pending.scheduled = true;
+                delay = pending.lastDelivery + minIntervalMs - System.currentTimeMillis();
+            }
+
+            final Runnable deliver = new Runnable() {
+                @Override
+                public void run() {
+                    deliver(key);
+                }
+            };
+            if (delay <= 0) {
+                executor.execute(deliver);
+            } else {
+                getScheduler().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        executor.execute(deliver);
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private <K> void deliver(final K key) {
+            final float progress;
+            final ProgressEvent<L, K> event;
+            synchronized (this) {
+                final Pending pending = mPending.get(key);
+                if (pending == null || !pending.scheduled)
+                    return; // Dropped meanwhile
+
+                pending.scheduled = false;
+                pending.lastDelivery = System.currentTimeMillis();
+                progress = pending.progress;
+                event = (ProgressEvent<L, K>) pending.event;
+            }
+            if (!removed)
+                event.dispatch(listener, key, progress);
+        }
+
+        synchronized void drop(final Object key) {
+            mPending.remove(key);
+        }
+    }
+
+    private static class Pending {
+        float progress;
+        ProgressEvent<?, ?> event;
+        boolean scheduled;
+        long lastDelivery;
+    }
+
+    //endregion
+}
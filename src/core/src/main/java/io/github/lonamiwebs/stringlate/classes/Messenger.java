@@ -1,12 +1,11 @@
 package io.github.lonamiwebs.stringlate.classes;
 
-import java.util.ArrayList;
-
 import io.github.lonamiwebs.stringlate.classes.repos.RepoHandler;
 
 // Static messenger class to pass messages back and forth between activities or async tasks.
 // Any activity can add a listener for certain events, e.g. when the progress of syncing a
-// repository changes, the count of available repositories changes.
+// repository changes, the count of available repositories changes. Listeners which touch
+// views should be added with an executor running on the UI thread.
 public class Messenger {
 
     // This interface is not meant to be used by the Messenger itself but rather
@@ -34,37 +33,77 @@ public class Messenger {
         void onFinish(boolean okay);
     }
 
-    public final static ArrayList<OnRepoSync> onRepoSync = new ArrayList<>();
-    public final static ArrayList<OnRepoChange> onRepoChange = new ArrayList<>();
-    public final static ArrayList<OnApplicationsSync> onApplicationsSync = new ArrayList<>();
+    // Progress listeners get at most one update per repository every this many milliseconds
+    public final static long DEFAULT_PROGRESS_INTERVAL_MS = 75;
+
+    public final static ListenerSet<OnRepoSync> onRepoSync = new ListenerSet<>(DEFAULT_PROGRESS_INTERVAL_MS);
+    public final static ListenerSet<OnRepoChange> onRepoChange = new ListenerSet<>(DEFAULT_PROGRESS_INTERVAL_MS);
+    public final static ListenerSet<OnApplicationsSync> onApplicationsSync = new ListenerSet<>(DEFAULT_PROGRESS_INTERVAL_MS);
+
+    // There's only one applications index, so its progress always uses the same key
+    private final static Object APPLICATIONS_KEY = new Object();
+
+    private final static ListenerSet.ProgressEvent<OnRepoSync, RepoHandler> REPO_SYNC_PROGRESS =
+            new ListenerSet.ProgressEvent<OnRepoSync, RepoHandler>() {
+                @Override
+                public void dispatch(OnRepoSync listener, RepoHandler which, float progress) {
+                    listener.onUpdate(which, progress);
+                }
+            };
+
+    private final static ListenerSet.ProgressEvent<OnApplicationsSync, Object> APPLICATIONS_SYNC_PROGRESS =
+            new ListenerSet.ProgressEvent<OnApplicationsSync, Object>() {
+                @Override
+                public void dispatch(OnApplicationsSync listener, Object key, float progress) {
+                    listener.onUpdate(progress);
+                }
+            };
+
+    // These may be called from any thread
 
     public static void notifyRepoSync(final RepoHandler which, final float progress) {
-        for (OnRepoSync x : onRepoSync)
-            x.onUpdate(which, progress);
+        onRepoSync.postProgress(which, progress, REPO_SYNC_PROGRESS);
     }
 
     public static void notifyRepoSyncFinished(final RepoHandler which, final boolean okay) {
-        for (OnRepoSync x : onRepoSync)
-            x.onFinish(which, okay);
+        onRepoSync.cancelProgress(which);
+        onRepoSync.post(new ListenerSet.Event<OnRepoSync>() {
+            @Override
+            public void dispatch(OnRepoSync listener) {
+                listener.onFinish(which, okay);
+            }
+        });
     }
 
     public static void notifyRepoAdded(final RepoHandler which) {
-        for (OnRepoChange x : onRepoChange)
-            x.onRepoAdded(which);
+        onRepoChange.post(new ListenerSet.Event<OnRepoChange>() {
+            @Override
+            public void dispatch(OnRepoChange listener) {
+                listener.onRepoAdded(which);
+            }
+        });
     }
 
     public static void notifyRepoRemoved(final RepoHandler which) {
-        for (OnRepoChange x : onRepoChange)
-            x.onRepoRemoved(which);
+        onRepoChange.post(new ListenerSet.Event<OnRepoChange>() {
+            @Override
+            public void dispatch(OnRepoChange listener) {
+                listener.onRepoRemoved(which);
+            }
+        });
     }
 
     public static void notifyApplicationSync(final float progress) {
-        for (OnApplicationsSync x : onApplicationsSync)
-            x.onUpdate(progress);
+        onApplicationsSync.postProgress(APPLICATIONS_KEY, progress, APPLICATIONS_SYNC_PROGRESS);
     }
 
     public static void notifyApplicationSyncFinished(final boolean okay) {
-        for (OnApplicationsSync x : onApplicationsSync)
-            x.onFinish(okay);
+        onApplicationsSync.cancelProgress(APPLICATIONS_KEY);
+        onApplicationsSync.post(new ListenerSet.Event<OnApplicationsSync>() {
+            @Override
+            public void dispatch(OnApplicationsSync listener) {
+                listener.onFinish(okay);
+            }
+        });
     }
 }
@@ -59,8 +59,12 @@ public class ApplicationDetails {
         return mPackageName;
     }
 
+    public Date getLastUpdated() {
+        return mLastUpdated;
+    }
+
     public String getLastUpdatedDateString() {
-        return DATE_FORMAT.format(mLastUpdated);
+        return mLastUpdated == null ? "" : DATE_FORMAT.format(mLastUpdated);
     }
 
     public String getProjectName() {
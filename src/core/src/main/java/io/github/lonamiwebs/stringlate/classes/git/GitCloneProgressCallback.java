@@ -13,8 +13,6 @@ public class GitCloneProgressCallback implements ProgressMonitor {
 
     private long mLastMs;
 
-    private final static long DELAY_PER_UPDATE = 75;
-
     private final static String RECEIVING_TITLE = "Receiving objects";
     private final static String RESOLVING_TITLE = "Resolving deltas";
 
@@ -40,9 +38,10 @@ public class GitCloneProgressCallback implements ProgressMonitor {
 
         mDone += completed;
 
-        // This method is called way so often, slow it down
+        // This method is called way so often, slow it down (the Messenger would coalesce
+        // the updates anyway, but this is cheaper than going through it on every call)
         long time = System.currentTimeMillis();
-        if (time - mLastMs >= DELAY_PER_UPDATE) {
+        if (time - mLastMs >= Messenger.DEFAULT_PROGRESS_INTERVAL_MS) {
             mLastMs = time;
             mCallback.onUpdate(1, (float) mDone / (float) mWork);
         }
@@ -7,13 +7,24 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InvalidObjectException;
 import java.util.AbstractMap;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 
+import io.github.lonamiwebs.stringlate.classes.net.HttpClient;
+import io.github.lonamiwebs.stringlate.classes.net.EtagCache;
 import io.github.lonamiwebs.stringlate.classes.repos.RepoHandler;
 import io.github.lonamiwebs.stringlate.interfaces.SlAppSettings;
 
@@ -28,19 +39,188 @@ public class GitHub {
     public final static String[] GITHUB_WANTED_SCOPES = {"public_repo", "gist"};
     private static final String GITHUB_REPO_URL_TEMPLATE = "https://github.com/%s/%s";
 
+    private static final int MAX_CONCURRENT_UPLOADS = 4;
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long RETRY_DELAY_MS = 1000;
+    private static final long MAX_RATE_LIMIT_WAIT_MS = 60 * 1000;
+
+    // How long the responses of read-only calls are used before revalidating them
+    private static final long USER_INFO_TTL_MS = 60 * 60 * 1000;
+    private static final long COLLABORATORS_TTL_MS = 10 * 60 * 1000;
+    private static final long BRANCHES_TTL_MS = 5 * 60 * 1000;
+    private static final long REPOSITORY_TTL_MS = 60 * 60 * 1000;
+    private static final long RESPONSE_CACHE_SIZE = 1024 * 1024;
+    private static final String RESPONSE_CACHE_DIR = "github_responses";
+
+    // One per cache directory, since different callers may use different ones
+    private static final HashMap<File, EtagCache> responseCaches = new HashMap<>();
+
+    private static String apiUrl = GITHUB_API_URL;
+
     //region Private methods
 
     private static String getUrl(final String call, final Object... args) {
         if (args.length > 0)
-            return GITHUB_API_URL + String.format(call, args);
+            return apiUrl + String.format(call, args);
         else
-            return GITHUB_API_URL + call;
+            return apiUrl + call;
+    }
+
+    // Performs the call once and returns its body, or "" if it failed for any reason
+    private static String call(final HttpClient.Request request) {
+        HttpClient.Response response = null;
+        try {
+            response = HttpClient.getDefault().execute(request);
+            return response.isSuccessful() ? response.readString() : "";
+        } catch (IOException e) {
+            e.printStackTrace();
+            return "";
+        } finally {
+            if (response != null)
+                response.close();
+        }
+    }
+
+    private static String call(final String url, final String method, final JSONObject json) {
+        final HttpClient.Request request = new HttpClient.Request(url).method(method);
+        if (json != null)
+            request.json(json);
+        return call(request);
+    }
+
+    private static String call(final String url, final String method) {
+        return call(url, method, null);
+    }
+
+    // Defaults to POST
+    private static String call(final String url, final JSONObject json) {
+        return call(url, HttpClient.POST, json);
+    }
+
+    // Performs the call and parses its JSON response, retrying if the server failed
+    // or the rate limit was exceeded (waiting until it's reset, if it's not too long)
+    private static JSONObject callJson(final String url, final String method, final JSONObject json)
+            throws JSONException {
+        final HttpClient.Request request = new HttpClient.Request(url).method(method);
+        if (json != null)
+            request.json(json);
+
+        int code = -1;
+        String body = "";
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; ++attempt) {
+            HttpClient.Response response = null;
+            long delay;
+            try {
+                response = HttpClient.getDefault().execute(request);
+                code = response.code;
+                body = response.readString();
+                if (response.isSuccessful())
+                    return new JSONObject(body);
+
+                delay = getRetryDelay(response, attempt);
+            } catch (IOException e) {
+                e.printStackTrace();
+                code = -1;
+                body = e.toString();
+                delay = RETRY_DELAY_MS << attempt; // Network failures are worth another try
+            } finally {
+                if (response != null)
+                    response.close();
+            }
+
+            if (delay < 0 || attempt == MAX_ATTEMPTS - 1)
+                break;
+
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        throw new JSONException(String.format(Locale.ENGLISH,
+                "%s %s failed with HTTP %d: %s", method, url, code, body));
+    }
+
+    // Returns how long to wait before retrying the failed call, or -1 if it shouldn't be
+    private static long getRetryDelay(final HttpClient.Response response, final int attempt) {
+        final long backoff = RETRY_DELAY_MS << attempt;
+        final String retryAfter = response.getHeader("Retry-After");
+        if (retryAfter != null) {
+            try {
+                final long wait = Long.parseLong(retryAfter.trim()) * 1000;
+                return wait <= MAX_RATE_LIMIT_WAIT_MS ? Math.max(wait, backoff) : -1;
+            } catch (NumberFormatException ignored) {
+            }
+        }
+
+        if (response.code == 403 || response.code == 429) {
+            // https://developer.github.com/v3/#rate-limiting
+            if ("0".equals(response.getHeader("X-RateLimit-Remaining"))) {
+                try {
+                    final long resetMs = Long.parseLong(response.getHeader("X-RateLimit-Reset")) * 1000;
+                    final long wait = resetMs - System.currentTimeMillis();
+                    return wait <= MAX_RATE_LIMIT_WAIT_MS ? Math.max(wait, backoff) : -1;
+                } catch (NumberFormatException ignored) {
+                    return -1;
+                }
+            }
+            return response.code == 429 ? backoff : -1;
+        }
+
+        // Server errors are worth another try
+        return response.code >= 500 ? backoff : -1;
+    }
+
+    // Read-only calls go through the response cache in the given cache directory
+    private static String cachedCall(final File cacheDir, final String url, final long ttlMs) {
+        EtagCache cache;
+        synchronized (GitHub.class) {
+            cache = responseCaches.get(cacheDir);
+            if (cache == null) {
+                cache = new EtagCache(new File(cacheDir, RESPONSE_CACHE_DIR), RESPONSE_CACHE_SIZE);
+                responseCaches.put(cacheDir, cache);
+            }
+        }
+        return cache.get(HttpClient.getDefault(), url, ttlMs);
+    }
+
+    private static JSONObject getResult(final Future<JSONObject> future) throws JSONException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof JSONException)
+                throw (JSONException) e.getCause();
+            throw wrap(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw wrap(e);
+        }
+    }
+
+    // JSONException(Throwable) needs API 27
+    private static JSONException wrap(final Throwable cause) {
+        final JSONException result = new JSONException(String.valueOf(cause));
+        result.initCause(cause);
+        return result;
     }
 
     //endregion
 
     //region Public methods
 
+    // Statistics about the cached read-only calls made with the given cache directory,
+    // or null if none was made yet
+    public static synchronized EtagCache getResponseCache(final File cacheDir) {
+        return responseCaches.get(cacheDir);
+    }
+
+    // Points the API calls to a different server, e.g. a GitHub Enterprise
+    // installation or a local stand-in used when testing. null resets it.
+    public static void setApiUrl(final String url) {
+        apiUrl = url == null ? GITHUB_API_URL : (url.endsWith("/") ? url : url + "/");
+    }
+
     public static JSONObject createGist(String description, boolean isPublic,
                                         HashMap<String, String> fileContents,
                                         String token) {
@@ -63,9 +243,9 @@ public class GitHub {
             params.put("files", filesObject);
 
             if (token.isEmpty())
-                return new JSONObject(NetworkUtils.performCall(getUrl("gists"), params));
+                return new JSONObject(call(getUrl("gists"), params));
             else
-                return new JSONObject(NetworkUtils.performCall(getUrl("gists?access_token=" + token), params));
+                return new JSONObject(call(getUrl("gists?access_token=" + token), params));
         } catch (JSONException e) {
             e.printStackTrace();
             return null;
@@ -81,7 +261,7 @@ public class GitHub {
             params.put("title", title);
             params.put("body", description);
 
-            return new JSONObject(NetworkUtils.performCall(getUrl("repos/%s/issues?access_token=%s",
+            return new JSONObject(call(getUrl("repos/%s/issues?access_token=%s",
                     repo.toOwnerRepo(), token), params));
         } catch (JSONException e) {
             e.printStackTrace();
@@ -95,7 +275,7 @@ public class GitHub {
         try {
             JSONObject params = new JSONObject();
             params.put("body", body);
-            return new JSONObject(NetworkUtils.performCall(getUrl(
+            return new JSONObject(call(getUrl(
                     "repos/%s/issues/%d/comments?access_token=%s",
                     repo.toOwnerRepo(), issueNumber, token), params));
         } catch (JSONException e) {
@@ -104,10 +284,10 @@ public class GitHub {
         }
     }
 
-    private static JSONObject getUserInfo(String token) {
+    private static JSONObject getUserInfo(String token, File cacheDir) {
         try {
-            return new JSONObject(NetworkUtils.performCall(getUrl(
-                    "user?access_token=%s", token), NetworkUtils.GET));
+            return new JSONObject(cachedCall(cacheDir, getUrl(
+                    "user?access_token=%s", token), USER_INFO_TTL_MS));
         } catch (JSONException e) {
             e.printStackTrace();
             return null;
@@ -117,8 +297,8 @@ public class GitHub {
     private static JSONArray getCollaborators(String token, RepoHandler repo)
             throws InvalidObjectException {
         try {
-            return new JSONArray(NetworkUtils.performCall(getUrl(
-                    "repos/%s/collaborators?access_token=%s", repo.toOwnerRepo(), token), NetworkUtils.GET));
+            return new JSONArray(cachedCall(repo.mCacheDir, getUrl(
+                    "repos/%s/collaborators?access_token=%s", repo.toOwnerRepo(), token), COLLABORATORS_TTL_MS));
         } catch (JSONException e) {
             // We might not have permission so the response isn't an array, rather an object:
             // {
@@ -132,7 +312,7 @@ public class GitHub {
 
     // Returns both the authenticated user and whether they have right to push
     public static AbstractMap.SimpleImmutableEntry<String, Boolean> canPush(String token, RepoHandler repo) {
-        JSONObject user = getUserInfo(token);
+        JSONObject user = getUserInfo(token, repo.mCacheDir);
         if (user == null)
             // TODO Actually, maybe throw an NoPermissionException or something
             return new AbstractMap.SimpleImmutableEntry<>(null, false);
@@ -162,8 +342,8 @@ public class GitHub {
 
     public static JSONArray getBranches(final RepoHandler repo) {
         try {
-            return new JSONArray(NetworkUtils.performCall(getUrl(
-                    "repos/%s/branches", repo.toOwnerRepo()), NetworkUtils.GET));
+            return new JSONArray(cachedCall(repo.mCacheDir, getUrl(
+                    "repos/%s/branches", repo.toOwnerRepo()), BRANCHES_TTL_MS));
         } catch (JSONException | InvalidObjectException e) {
             e.printStackTrace();
             return null;
@@ -172,8 +352,8 @@ public class GitHub {
 
     public static String getDefaultBranch(final RepoHandler repo) {
         try {
-            JSONObject result = new JSONObject(NetworkUtils.performCall(getUrl(
-                    "repos/%s", repo.toOwnerRepo()), NetworkUtils.GET));
+            JSONObject result = new JSONObject(cachedCall(repo.mCacheDir, getUrl(
+                    "repos/%s", repo.toOwnerRepo()), REPOSITORY_TTL_MS));
             return result.getString("default_branch");
         } catch (JSONException | InvalidObjectException e) {
             e.printStackTrace();
@@ -184,8 +364,8 @@ public class GitHub {
     private static JSONArray getCommits(final String token, final RepoHandler repo)
             throws InvalidObjectException {
         try {
-            return new JSONArray(NetworkUtils.performCall(getUrl(
-                    "repos/%s/commits?access_token=%s", repo.toOwnerRepo(), token), NetworkUtils.GET));
+            return new JSONArray(call(getUrl(
+                    "repos/%s/commits?access_token=%s", repo.toOwnerRepo(), token), HttpClient.GET));
         } catch (JSONException e) {
             e.printStackTrace();
             return null;
@@ -195,16 +375,23 @@ public class GitHub {
     public static JSONObject createBranch(final String token, final RepoHandler repo, final String branchName)
             throws InvalidObjectException {
         try {
-            JSONArray head = new JSONArray(NetworkUtils.performCall(getUrl(
-                    "repos/%s/git/refs/heads?access_token=%s", repo.toOwnerRepo(), token), NetworkUtils.GET));
+            JSONArray head = new JSONArray(call(getUrl(
+                    "repos/%s/git/refs/heads?access_token=%s", repo.toOwnerRepo(), token), HttpClient.GET));
 
             final String sha = head.getJSONObject(0).getJSONObject("object").getString("sha");
             JSONObject params = new JSONObject();
             params.put("ref", "refs/heads/" + branchName);
             params.put("sha", sha);
-            return new JSONObject(NetworkUtils.performCall(getUrl(
+            final JSONObject result = new JSONObject(call(getUrl(
                     "repos/%s/git/refs?access_token=%s", repo.toOwnerRepo(), token), params));
 
+            // The cached list of branches is now outdated
+            final EtagCache cache = getResponseCache(repo.mCacheDir);
+            if (cache != null)
+                cache.invalidate(getUrl("repos/%s/branches", repo.toOwnerRepo()));
+
+            return result;
+
         } catch (JSONException e) {
             e.printStackTrace();
             return null;
@@ -214,8 +401,8 @@ public class GitHub {
     public static JSONObject forkRepository(final String token, final RepoHandler repo)
             throws InvalidObjectException {
         try {
-            JSONObject result = new JSONObject(NetworkUtils.performCall(getUrl(
-                    "repos/%s/forks?access_token=%s", repo.toOwnerRepo(), token), NetworkUtils.POST));
+            JSONObject result = new JSONObject(call(getUrl(
+                    "repos/%s/forks?access_token=%s", repo.toOwnerRepo(), token), HttpClient.POST));
 
             // "Forking a Repository happens asynchronously."
             // One way to know when forking is done is to fetch the list of commits for the fork.
@@ -252,7 +439,7 @@ public class GitHub {
             if (body != null && !body.isEmpty())
                 params.put("body", body);
 
-            return new JSONObject(NetworkUtils.performCall(getUrl(
+            return new JSONObject(call(getUrl(
                     "repos/%s/pulls?access_token=%s", originalRepo.toOwnerRepo(), token), params));
         } catch (JSONException e) {
             e.printStackTrace();
@@ -269,88 +456,95 @@ public class GitHub {
         final String tokenQuery = "?access_token=" + token;
         final String ownerRepo = repo.toOwnerRepo();
 
-        // Step 1. Get a reference to HEAD (GET /repos/:owner/:repo/git/refs/:ref)
-        // https://developer.github.com/v3/git/refs/#get-a-reference
-        JSONObject head = new JSONObject(NetworkUtils.performCall(
-                getUrl("repos/%s/git/refs/heads/%s%s", ownerRepo, branch, tokenQuery), NetworkUtils.GET));
-
-        // Step 2. Grab the commit that HEAD points to (GET /repos/:owner/:repo/git/commits/:sha)
-        // https://developer.github.com/v3/git/commits/#get-a-commit
-        String headCommitUrl = head.getJSONObject("object").getString("url");
-        // Equivalent to getting object.sha and then formatting it
-
-        JSONObject commit = new JSONObject(NetworkUtils.performCall(headCommitUrl + tokenQuery, NetworkUtils.GET));
-
-        // Step 3. Post your new file to the server (POST /repos/:owner/:repo/git/blobs)
-        // https://developer.github.com/v3/git/blobs/#create-a-blob
-        final HashMap<String, JSONObject> pathBlobs = new HashMap<>();
-
-        for (Map.Entry<String, String> pathContent : pathContents.entrySet()) {
-            JSONObject newBlob = new JSONObject();
-            newBlob.put("content", pathContent.getValue());
-            newBlob.put("encoding", "utf-8");
-
-            JSONObject blob = new JSONObject(NetworkUtils.performCall(
-                    getUrl("repos/%s/git/blobs%s", ownerRepo, tokenQuery), newBlob));
+        // Uploading the blobs doesn't depend on anything else, so do it
+        // concurrently while we also find out what the HEAD commit is.
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(MAX_CONCURRENT_UPLOADS, pathContents.size())));
+        try {
+            // Step 3. Post your new file to the server (POST /repos/:owner/:repo/git/blobs)
+            // https://developer.github.com/v3/git/blobs/#create-a-blob
+            final LinkedHashMap<String, Future<JSONObject>> pathBlobs = new LinkedHashMap<>();
+            for (Map.Entry<String, String> pathContent : pathContents.entrySet()) {
+                final JSONObject newBlob = new JSONObject();
+                newBlob.put("content", pathContent.getValue());
+                newBlob.put("encoding", "utf-8");
+
+                pathBlobs.put(pathContent.getKey(), executor.submit(new Callable<JSONObject>() {
+                    @Override
+                    public JSONObject call() throws JSONException {
+                        return callJson(getUrl("repos/%s/git/blobs%s", ownerRepo, tokenQuery),
+                                HttpClient.POST, newBlob);
+                    }
+                }));
+            }
 
-            pathBlobs.put(pathContent.getKey(), blob);
-        }
+            // Step 1. Get a reference to HEAD (GET /repos/:owner/:repo/git/refs/:ref)
+            // https://developer.github.com/v3/git/refs/#get-a-reference
+            JSONObject head = callJson(getUrl("repos/%s/git/refs/heads/%s%s", ownerRepo, branch, tokenQuery),
+                    HttpClient.GET, null);
+
+            // Step 2. Grab the commit that HEAD points to (GET /repos/:owner/:repo/git/commits/:sha)
+            // https://developer.github.com/v3/git/commits/#get-a-commit
+            String headCommitUrl = head.getJSONObject("object").getString("url");
+            // Equivalent to getting object.sha and then formatting it
+
+            JSONObject commit = callJson(headCommitUrl + tokenQuery, HttpClient.GET, null);
+
+            // Step 4. Get a hold of the tree that the commit points to (GET /repos/:owner/:repo/git/trees/:sha)
+            // https://developer.github.com/v3/git/trees/#get-a-tree
+            // We only need its SHA, which the commit already contains, so there's no need to GET it
+            String baseTreeSha = commit.getJSONObject("tree").getString("sha");
+
+            // Step 5. Create a tree containing your new file
+            //      5a. The easy way (POST /repos/:owner/:repo/git/trees)
+            // https://developer.github.com/v3/git/trees/#create-a-tree
+            JSONObject newTree = new JSONObject();
+            newTree.put("base_tree", baseTreeSha);
+            {
+                JSONArray blobFileArray = new JSONArray();
+                for (Map.Entry<String, Future<JSONObject>> pathBlob : pathBlobs.entrySet()) {
+                    JSONObject blobFileTree = new JSONObject();
+                    blobFileTree.put("path", pathBlob.getKey());
+                    blobFileTree.put("mode", "100644"); // 100644 (blob), 100755 (executable), 040000 (subdirectory/tree), 160000 (submodule/commit), or 120000 (blob specifying path of symlink)
+                    blobFileTree.put("type", "blob"); // "blob", "tree", or "commit"
+                    blobFileTree.put("sha", getResult(pathBlob.getValue()).getString("sha"));
+
+                    blobFileArray.put(blobFileTree);
+                }
 
-        // Step 4. Get a hold of the tree that the commit points to (GET /repos/:owner/:repo/git/trees/:sha)
-        // https://developer.github.com/v3/git/trees/#get-a-tree
-        String treeUrl = commit.getJSONObject("tree").getString("url");
-        // Equivalent to getting tree.sha and then formatting it
-
-        JSONObject baseTree = new JSONObject(NetworkUtils.performCall(treeUrl + tokenQuery, NetworkUtils.GET));
-
-        // Step 5. Create a tree containing your new file
-        //      5a. The easy way (POST /repos/:owner/:repo/git/trees)
-        // https://developer.github.com/v3/git/trees/#create-a-tree
-        JSONObject newTree = new JSONObject();
-        newTree.put("base_tree", baseTree.get("sha"));
-        {
-            JSONArray blobFileArray = new JSONArray();
-            for (Map.Entry<String, JSONObject> pathBlob : pathBlobs.entrySet()) {
-                JSONObject blobFileTree = new JSONObject();
-                blobFileTree.put("path", pathBlob.getKey());
-                blobFileTree.put("mode", "100644"); // 100644 (blob), 100755 (executable), 040000 (subdirectory/tree), 160000 (submodule/commit), or 120000 (blob specifying path of symlink)
-                blobFileTree.put("type", "blob"); // "blob", "tree", or "commit"
-                blobFileTree.put("sha", pathBlob.getValue().getString("sha"));
-
-                blobFileArray.put(blobFileTree);
+                // Finally put the array with our files
+                newTree.put("tree", blobFileArray);
             }
 
-            // Finally put the array with our files
-            newTree.put("tree", blobFileArray);
-        }
-
-        JSONObject createdTree = new JSONObject(NetworkUtils.performCall(
-                getUrl("repos/%s/git/trees%s", ownerRepo, tokenQuery), newTree));
-
-        // Step 6. Create a new commit (POST /repos/:owner/:repo/git/commits)
-        // https://developer.github.com/v3/git/commits/#create-a-commit
-        JSONObject newCommit = new JSONObject();
-        newCommit.put("message", commitMessage);
-        // [...] put the SHA of the commit that you retrieved in step #2 in the parents array
-        {
-            JSONArray parents = new JSONArray();
-            parents.put(0, commit.getString("sha"));
-            newCommit.put("parents", parents);
-        }
-        // and the SHA of your newly-created tree from step #5 in the tree field.
-        newCommit.put("tree", createdTree.getString("sha"));
+            JSONObject createdTree = callJson(
+                    getUrl("repos/%s/git/trees%s", ownerRepo, tokenQuery), HttpClient.POST, newTree);
+
+            // Step 6. Create a new commit (POST /repos/:owner/:repo/git/commits)
+            // https://developer.github.com/v3/git/commits/#create-a-commit
+            JSONObject newCommit = new JSONObject();
+            newCommit.put("message", commitMessage);
+            // [...] put the SHA of the commit that you retrieved in step #2 in the parents array
+            {
+                JSONArray parents = new JSONArray();
+                parents.put(0, commit.getString("sha"));
+                newCommit.put("parents", parents);
+            }
+            // and the SHA of your newly-created tree from step #5 in the tree field.
+            newCommit.put("tree", createdTree.getString("sha"));
 
-        JSONObject repliedNewCommit = new JSONObject(NetworkUtils.performCall(
-                getUrl("repos/%s/git/commits%s", ownerRepo, tokenQuery), newCommit));
+            JSONObject repliedNewCommit = callJson(
+                    getUrl("repos/%s/git/commits%s", ownerRepo, tokenQuery), HttpClient.POST, newCommit);
 
-        // Step 7. Update HEAD (PATCH /repos/:owner/:repo/git/refs/:ref)
-        // https://developer.github.com/v3/git/refs/#update-a-reference
-        JSONObject patch = new JSONObject();
-        patch.put("sha", repliedNewCommit.getString("sha"));
+            // Step 7. Update HEAD (PATCH /repos/:owner/:repo/git/refs/:ref)
+            // https://developer.github.com/v3/git/refs/#update-a-reference
+            JSONObject patch = new JSONObject();
+            patch.put("sha", repliedNewCommit.getString("sha"));
 
-        return new JSONObject(NetworkUtils.performCall(
-                getUrl("repos/%s/git/refs/heads/%s%s", ownerRepo, branch, tokenQuery),
-                NetworkUtils.PATCH, patch));
+            return callJson(getUrl("repos/%s/git/refs/heads/%s%s", ownerRepo, branch, tokenQuery),
+                    HttpClient.PATCH, patch);
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
     public static String buildGitHubUrl(String owner, String repository) {
@@ -387,9 +581,8 @@ public class GitHub {
             map.put("code", code);
 
             CompleteAuthenticationResult ret = new CompleteAuthenticationResult();
-            HashMap<String, String> postResult = NetworkUtils.getDataMap(
-                    NetworkUtils.performCall(GITHUB_COMPLETE_AUTH_URL, NetworkUtils.POST, map)
-            );
+            HashMap<String, String> postResult = NetworkUtils.getDataMap(call(new HttpClient.Request(
+                    GITHUB_COMPLETE_AUTH_URL).method(HttpClient.POST).form(map)));
             if (postResult.containsKey("error")) {
                 ret.message = postResult.get("error_description");
             } else {
@@ -6,13 +6,25 @@ import org.eclipse.jgit.api.CloneCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.ListBranchCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Scanner;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -65,24 +77,78 @@ public class GitWrapper {
     public static boolean cloneRepo(final String uri, final File cloneTo,
                                     final String branch,
                                     final GitCloneProgressCallback callback) {
+        return cloneRepo(uri, cloneTo, branch, false, callback);
+    }
+
+    // If sparse, only the files which findUsefulResources() would find are checked out,
+    // straight from the object database, instead of every file in the repository
+    public static boolean cloneRepo(final String uri, final File cloneTo,
+                                    final String branch, final boolean sparse,
+                                    final GitCloneProgressCallback callback) {
         Git result = null;
 
         try {
             final CloneCommand clone = Git.cloneRepository()
                     .setURI(uri).setDirectory(cloneTo)
-                    .setBare(false).setRemote(REMOTE_NAME).setNoCheckout(false)
+                    .setBare(false).setRemote(REMOTE_NAME).setNoCheckout(sparse)
                     .setCloneAllBranches(false).setCloneSubmodules(false)
                     .setProgressMonitor(callback);
 
-            if (!branch.isEmpty()) {
-                if (branch.contains("/")) {
-                    clone.setBranch(branch.substring(branch.lastIndexOf('/') + 1));
-                } else {
-                    clone.setBranch(branch);
-                }
-            }
+            final String branchName = branch.substring(branch.lastIndexOf('/') + 1);
+            if (!branchName.isEmpty())
+                clone.setBranch(branchName);
 
             result = clone.call();
+            return !sparse || checkoutUsefulResources(result, branchName, cloneTo, callback);
+        } catch (GitAPIException e) {
+            e.printStackTrace();
+        } finally {
+            if (result != null) {
+                result.close();
+            }
+        }
+        return false;
+    }
+
+    // The clone made no local branch since nothing was checked out, so the commit which
+    // would have been checked out (the one of the remote HEAD by default) is looked up here
+    private static boolean checkoutUsefulResources(final Git git, final String branchName,
+                                                   final File workDir,
+                                                   final GitCloneProgressCallback callback)
+            throws GitAPIException {
+        final Repository repo = git.getRepository();
+        try {
+            ObjectId head = null;
+            if (branchName.isEmpty() || branchName.equals(Constants.HEAD)) {
+                for (Ref ref : git.lsRemote().setRemote(REMOTE_NAME).call())
+                    if (ref.getName().equals(Constants.HEAD))
+                        head = ref.getObjectId();
+            } else {
+                head = repo.resolve(Constants.R_REMOTES + REMOTE_NAME + "/" + branchName);
+            }
+            if (head == null)
+                return false; // Empty repository, there is nothing to check out
+
+            return writeUsefulResources(repo, head, workDir, null, callback);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // Clones the repository without a working tree, so its files can only be read from
+    // the object database. Every branch and tag is fetched, so any of them can be read.
+    public static boolean cloneBareRepo(final String uri, final File cloneTo,
+                                        final GitCloneProgressCallback callback) {
+        Git result = null;
+
+        try {
+            result = Git.cloneRepository()
+                    .setURI(uri).setDirectory(cloneTo)
+                    .setBare(true).setRemote(REMOTE_NAME)
+                    .setCloneAllBranches(true).setCloneSubmodules(false)
+                    .setProgressMonitor(callback)
+                    .call();
             return true;
         } catch (GitAPIException e) {
             e.printStackTrace();
@@ -94,6 +160,86 @@ public class GitWrapper {
         return false;
     }
 
+    // Resolves a branch (either "name" or "refs/remotes/origin/name"), a tag, or HEAD if the
+    // revision is empty, to the commit it points to. Returns null if it doesn't exist
+    public static ObjectId resolveCommit(final Repository repo, final String revision) {
+        try {
+            if (revision.isEmpty())
+                return repo.resolve(Constants.HEAD + "^{commit}");
+
+            final ObjectId result = repo.resolve(revision + "^{commit}");
+            if (result != null || !revision.contains("/"))
+                return result;
+
+            // Bare clones have no remote branches, only the (local) branches of the remote
+            return repo.resolve(revision.substring(revision.lastIndexOf('/') + 1) + "^{commit}");
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // Writes the files of the commit which findUsefulResources() would find under workDir.
+    // If xmlObjects is given, the files under values*/ aren't written, their objects are
+    // put there by path instead, so that they can be read without any intermediate file.
+    public static boolean writeUsefulResources(final Repository repo, final ObjectId commit,
+                                               final File workDir,
+                                               final Map<String, ObjectId> xmlObjects,
+                                               final GitCloneProgressCallback callback) {
+        final RevWalk revWalk = new RevWalk(repo);
+        final TreeWalk treeWalk = new TreeWalk(repo);
+        try {
+            treeWalk.addTree(revWalk.parseCommit(commit).getTree());
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(USEFUL_RESOURCES_FILTER);
+            while (treeWalk.next()) {
+                if (callback.isCancelled())
+                    return false;
+
+                // Symbolic links and submodules are not files we can use
+                final int mode = treeWalk.getRawMode(0);
+                if (mode != FileMode.REGULAR_FILE.getBits() && mode != FileMode.EXECUTABLE_FILE.getBits())
+                    continue;
+
+                final String path = treeWalk.getPathString();
+                if (xmlObjects != null && isValuesXml("/" + path, treeWalk.getNameString())) {
+                    xmlObjects.put(path, treeWalk.getObjectId(0));
+                    continue;
+                }
+
+                final File file = new File(workDir, path);
+                if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs())
+                    return false;
+
+                final FileOutputStream out = new FileOutputStream(file);
+                try {
+                    repo.open(treeWalk.getObjectId(0), Constants.OBJ_BLOB).copyTo(out);
+                } finally {
+                    out.close();
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            treeWalk.release();
+            revWalk.release();
+        }
+    }
+
+    // The branches of a bare clone, named as the remote branches of a normal clone would be
+    public static ArrayList<String> getBareBranches(final Repository repo) {
+        final ArrayList<String> result = new ArrayList<>();
+        try {
+            for (String name : repo.getRefDatabase().getRefs(Constants.R_HEADS).keySet())
+                result.add(Constants.R_REMOTES + REMOTE_NAME + "/" + name);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
     public static ArrayList<String> getBranches(final File repo) {
         try {
             final List<Ref> refs = Git.open(repo)
@@ -131,6 +277,42 @@ public class GitWrapper {
         return result;
     }
 
+    // Only lets through the files which findUsefulResources() would find and we later
+    // use (resources under values*/, the manifest, the icons and README-like files)
+    private static final TreeFilter USEFUL_RESOURCES_FILTER = new TreeFilter() {
+        @Override
+        public boolean include(final TreeWalk walker) {
+            final String name = walker.getNameString();
+            if (name.startsWith("."))
+                return false; // Also skipped by findUsefulResources()
+
+            return walker.isSubtree() || isUsefulResource("/" + walker.getPathString(), name);
+        }
+
+        @Override
+        public boolean shouldBeRecursive() {
+            return true;
+        }
+
+        @Override
+        public TreeFilter clone() {
+            return this; // Has no state
+        }
+    };
+
+    private static boolean isUsefulResource(final String path, final String name) {
+        if (PATTERN_XML.matcher(name).find())
+            return name.equals(MANIFEST) || isValuesXml(path, name);
+        else if (PATTERN_IMG.matcher(name).find())
+            return path.contains("/mipmap") || path.contains("/drawable") || name.startsWith(ICON_WEB);
+        else
+            return PATTERN_README.matcher(name).find();
+    }
+
+    private static boolean isValuesXml(final String path, final String name) {
+        return path.contains("/values") && PATTERN_XML.matcher(name).find();
+    }
+
     private static void findUsefulResources(final File dir, final RepositoryResources result) {
         if (!dir.getName().startsWith(".")) {
             if (dir.isDirectory()) {
@@ -156,12 +338,51 @@ public class GitWrapper {
         return result;
     }
 
+    // Same as above, but for the objects found by writeUsefulResources(). Returns their paths
+    public static ArrayList<String> searchAndroidResources(final Repository repo,
+                                                           final Map<String, ObjectId> xmlObjects) {
+        ArrayList<String> result = new ArrayList<>();
+        for (Map.Entry<String, ObjectId> entry : xmlObjects.entrySet())
+            if (objectContains(repo, entry.getValue(), STR_STRING, STR_PLURALS))
+                result.add(entry.getKey());
+        return result;
+    }
+
+    // Like FileUtils.fileContains(), but reading the object straight from the repository
+    private static boolean objectContains(final Repository repo, final ObjectId id,
+                                          final String... needles) {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(
+                    repo.open(id, Constants.OBJ_BLOB).openStream(), "UTF-8"));
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.toLowerCase(Locale.ROOT);
+                for (String needle : needles)
+                    if (line.contains(needle))
+                        return true;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        return false;
+    }
+
     //region Searching Android icon
 
     private static final Pattern ICON_PATTERN = Pattern.compile(
             "<application[\\s\\S]+?android:icon=\"@(mipmap|drawable)/(\\w+)\"[\\s\\S]+?>");
 
     private static final String MANIFEST = "AndroidManifest.xml";
+    private static final String ICON_WEB = "ic_launcher-web.png";
 
     public static File findProperIcon(final RepositoryResources resources, final int desiredIconDpi) {
         ArrayList<File> foundIcons;
@@ -169,7 +390,7 @@ public class GitWrapper {
         foundIcons = findIcons(resources, "/mipmap", "ic_launcher.png");
         if (foundIcons.isEmpty()) {
             // No luck, maybe ic_launcher-web.png?
-            foundIcons = findIcons(resources, "", "ic_launcher-web.png");
+            foundIcons = findIcons(resources, "", ICON_WEB);
             if (foundIcons.isEmpty()) {
                 // Try looking for the right name in the AndroidManifest.xml
                 foundIcons = findIconFromManifest(resources);
@@ -0,0 +1,266 @@
+package io.github.lonamiwebs.stringlate.classes.locales;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.MissingResourceException;
+
+// Everything we need to know about a locale code, worked out once and cached.
+// Asking the JDK means building a Locale and probing its ISO3 codes (which throws
+// for unknown locales), and the same few codes are asked about over and over
+// when sorting and showing the locales of a repository.
+//
+// Codes are short ASCII strings ("es", "zh-rTW"), so they are packed into a long
+// to look them up without hashing (or even creating) any String or boxed key.
+public class LocaleRegistry {
+
+    //region Members
+
+    private static final LocaleRegistry INSTANCE = new LocaleRegistry();
+
+    // The display names depend on the default locale, so they're cleared if it changes
+    private Locale mDisplayLocale;
+    private final LongMap<Info> mInfos = new LongMap<>();
+    private final HashMap<String, Info> mOtherInfos = new HashMap<>(); // Codes not fitting a long
+
+    // Available locales by their language, built on first use
+    private LongMap<Locale[]> mCountries;
+
+    //endregion
+
+    //region Info
+
+    public static class Info {
+        public final String code;
+        public final Locale locale;
+        public final boolean valid;
+        public final String display;
+        public final String englishDisplay;
+        public final String emojiFlag;
+
+        private Info(final String code) {
+            this.code = code;
+            locale = parse(code);
+            valid = isValid(locale);
+            display = valid ? locale.getDisplayName() : code;
+            englishDisplay = valid ? locale.getDisplayName(Locale.ENGLISH) : code;
+            emojiFlag = getEmojiFlag(locale);
+        }
+    }
+
+    //endregion
+
+    //region Constructor
+
+    private LocaleRegistry() {
+    }
+
+    public static LocaleRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    //endregion
+
+    //region Looking up
+
+    public synchronized Info get(final String code) {
+        final Locale displayLocale = Locale.getDefault();
+        if (!displayLocale.equals(mDisplayLocale)) {
+            mInfos.clear();
+            mOtherInfos.clear();
+            mDisplayLocale = displayLocale;
+        }
+
+        final long key = pack(code);
+        Info info = key == 0 ? mOtherInfos.get(code) : mInfos.get(key);
+        if (info == null) {
+            info = new Info(code);
+            if (key == 0)
+                mOtherInfos.put(code, info);
+            else
+                mInfos.put(key, info);
+        }
+        return info;
+    }
+
+    // Every available locale for the given language (or the language itself if there are
+    // none but it's valid). A new list is returned every time, so it can be modified.
+    public ArrayList<Locale> getCountries(final String language) {
+        final Locale[] countries;
+        synchronized (this) {
+            if (mCountries == null)
+                mCountries = loadCountries();
+
+            final long key = pack(language);
+            countries = key == 0 ? null : mCountries.get(key);
+        }
+
+        final ArrayList<Locale> result = new ArrayList<>();
+        if (countries != null) {
+            Collections.addAll(result, countries);
+        } else {
+            final Locale locale = new Locale(language);
+            if (isValid(locale))
+                result.add(locale);
+        }
+        return result;
+    }
+
+    // Sorts the locale codes by their display name, looking each up only once
+    public void sortByDisplay(final List<String> codes) {
+        final Info[] infos = new Info[codes.size()];
+        for (int i = 0; i < infos.length; ++i)
+            infos[i] = get(codes.get(i));
+
+        Arrays.sort(infos, new Comparator<Info>() {
+            @Override
+            public int compare(Info i1, Info i2) {
+                return i1.display.compareTo(i2.display);
+            }
+        });
+        for (int i = 0; i < infos.length; ++i)
+            codes.set(i, infos[i].code);
+    }
+
+    private static LongMap<Locale[]> loadCountries() {
+        final HashMap<String, ArrayList<Locale>> byLanguage = new HashMap<>();
+        for (Locale locale : Locale.getAvailableLocales()) {
+            ArrayList<Locale> list = byLanguage.get(locale.getLanguage());
+            if (list == null) {
+                list = new ArrayList<>();
+                byLanguage.put(locale.getLanguage(), list);
+            }
+            list.add(locale);
+        }
+
+        final LongMap<Locale[]> result = new LongMap<>();
+        for (HashMap.Entry<String, ArrayList<Locale>> entry : byLanguage.entrySet()) {
+            final long key = pack(entry.getKey());
+            if (key != 0)
+                result.put(key, entry.getValue().toArray(new Locale[entry.getValue().size()]));
+        }
+        return result;
+    }
+
+    //endregion
+
+    //region Utilities
+
+    static Locale parse(final String code) {
+        if (code.contains("-")) {
+            final String[] parts = code.split("-");
+            return new Locale(parts[0], parts[1].substring(1));
+        }
+
+        return new Locale(code);
+    }
+
+    static boolean isValid(final Locale locale) {
+        try {
+            return locale.getISO3Language() != null && locale.getISO3Country() != null;
+        } catch (MissingResourceException ignored) {
+            return false;
+        }
+    }
+
+    private static String getEmojiFlag(final Locale locale) {
+        String countryCode = locale.getCountry();
+        if (countryCode.isEmpty())
+            return joinAsRIS(locale.getLanguage().toUpperCase(), true);
+        else
+            return joinAsRIS(countryCode.toUpperCase(), countryCode.length() != 2);
+    }
+
+    // https://en.wikipedia.org/wiki/Regional_Indicator_Symbol
+    private static String joinAsRIS(final String text, boolean addInvisibleChar) {
+        try {
+            final StringBuilder result = new StringBuilder();
+            for (int i = 0; i != text.length(); ++i) {
+                result.append(Character.toChars(Character.codePointAt(text, i) - 'A' + 0x1F1E6));
+                if (addInvisibleChar && i != text.length() - 1)
+                    result.append('\u2063'); // http://www.fileformat.info/info/unicode/char/2063/index.htm
+            }
+            return result.toString();
+        } catch (IndexOutOfBoundsException ignored) {
+            return "";
+        }
+    }
+
+    // Packs up to 8 ASCII characters into a long, or returns 0 if the code doesn't fit
+    private static long pack(final String code) {
+        final int length = code.length();
+        if (length == 0 || length > 8)
+            return 0;
+
+        long result = 0;
+        for (int i = 0; i < length; ++i) {
+            final char c = code.charAt(i);
+            if (c == 0 || c > 0x7f)
+                return 0;
+            result = (result << 8) | c;
+        }
+        return result;
+    }
+
+    // Open addressing hash map with (non-zero) long keys
+    private static class LongMap<V> {
+        private long[] mKeys = new long[16];
+        private Object[] mValues = new Object[16];
+        private int mSize;
+
+        @SuppressWarnings("unchecked")
+        V get(final long key) {
+            final int mask = mKeys.length - 1;
+            for (int i = hash(key) & mask; mKeys[i] != 0; i = (i + 1) & mask) {
+                if (mKeys[i] == key)
+                    return (V) mValues[i];
+            }
+            return null;
+        }
+
+        void put(final long key, final V value) {
+            if (2 * (mSize + 1) > mKeys.length)
+                grow();
+
+            final int mask = mKeys.length - 1;
+            int i = hash(key) & mask;
+            while (mKeys[i] != 0 && mKeys[i] != key)
+                i = (i + 1) & mask;
+
+            if (mKeys[i] == 0)
+                mSize++;
+            mKeys[i] = key;
+            mValues[i] = value;
+        }
+
+        void clear() {
+            Arrays.fill(mKeys, 0);
+            Arrays.fill(mValues, null);
+            mSize = 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void grow() {
+            final long[] keys = mKeys;
+            final Object[] values = mValues;
+            mKeys = new long[keys.length * 2];
+            mValues = new Object[values.length * 2];
+            mSize = 0;
+            for (int i = 0; i < keys.length; ++i) {
+                if (keys[i] != 0)
+                    put(keys[i], (V) values[i]);
+            }
+        }
+
+        private static int hash(final long key) {
+            final long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    //endregion
+}
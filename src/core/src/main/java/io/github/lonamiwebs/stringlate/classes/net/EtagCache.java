@@ -0,0 +1,249 @@
+package io.github.lonamiwebs.stringlate.classes.net;
+
+import net.gsantner.opoc.util.FileUtils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Disk-backed cache for the bodies of GET requests. Bodies younger than the
+// given time to live are served without touching the network, and older ones
+// are revalidated with their ETag, so an unchanged resource costs a 304 with
+// no body (which, for instance, doesn't count against GitHub's rate limit).
+//
+// Entries are stored under the SHA-1 of their url, so tokens which may be
+// part of it never reach the disk. Once the cache grows past its maximum
+// size, the entries which were validated the longest ago are removed.
+public class EtagCache {
+
+    //region Members
+
+    private static final String EXTENSION = ".json";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File mDir;
+    private final long mMaxSize;
+
+    private final AtomicInteger mHits = new AtomicInteger();
+    private final AtomicInteger mRevalidated = new AtomicInteger();
+    private final AtomicInteger mMisses = new AtomicInteger();
+
+    private static class Entry {
+        final String etag;
+        final String body;
+
+        Entry(final String etag, final String body) {
+            this.etag = etag;
+            this.body = body;
+        }
+    }
+
+    //endregion
+
+    //region Constructor
+
+    public EtagCache(final File dir, final long maxSizeBytes) {
+        mDir = dir;
+        mMaxSize = maxSizeBytes;
+    }
+
+    //endregion
+
+    //region Querying
+
+    // Returns the body of the given url, or "" if it couldn't be retrieved (like
+    // an unsuccessful response would). If the server can't be reached at all,
+    // the cached body is returned regardless of its age, if there is any.
+    public String get(final HttpClient client, final String url, final long ttlMs) {
+        final File file = getFile(url);
+        final Entry entry = read(file);
+        if (entry != null && System.currentTimeMillis() - file.lastModified() < ttlMs) {
+            mHits.incrementAndGet();
+            return entry.body;
+        }
+
+        final HttpClient.Request request = new HttpClient.Request(url);
+        if (entry != null)
+            request.ifNoneMatch(entry.etag);
+
+        HttpClient.Response response = null;
+        try {
+            response = client.execute(request);
+            if (entry != null && response.isNotModified()) {
+                mRevalidated.incrementAndGet();
+                // Fresh again for another ttlMs
+                if (!file.setLastModified(System.currentTimeMillis()))
+                    write(file, entry);
+                return entry.body;
+            }
+
+            mMisses.incrementAndGet();
+            if (!response.isSuccessful()) {
+                if (response.code >= 500 && entry != null)
+                    return entry.body; // Better outdated than nothing at all
+
+                if (response.code == 401 || response.code == 404)
+                    delete(file); // The resource is gone or we lost access to it
+                return "";
+            }
+
+            final String body = response.readString();
+            final String etag = response.getETag();
+            if (etag != null) {
+                write(file, new Entry(etag, body));
+                trim();
+            }
+            return body;
+        } catch (IOException e) {
+            e.printStackTrace();
+            mMisses.incrementAndGet();
+            return entry == null ? "" : entry.body;
+        } finally {
+            if (response != null)
+                response.close();
+        }
+    }
+
+    // Should be called after performing a call that modifies the resource
+    public void invalidate(final String url) {
+        delete(getFile(url));
+    }
+
+    public synchronized void clear() {
+        final File[] files = mDir.listFiles();
+        if (files != null)
+            for (File file : files)
+                delete(file);
+    }
+
+    //endregion
+
+    //region Statistics
+
+    // Served from disk without performing any request
+    public int getHitCount() {
+        return mHits.get();
+    }
+
+    // Served from disk after the server replied that it was not modified
+    public int getRevalidatedCount() {
+        return mRevalidated.get();
+    }
+
+    // The whole body had to be retrieved from the server
+    public int getMissCount() {
+        return mMisses.get();
+    }
+
+    // Ratio of the requests that didn't need to retrieve the whole body
+    public float getHitRatio() {
+        final int served = mHits.get() + mRevalidated.get();
+        final int total = served + mMisses.get();
+        return total == 0 ? 0f : (float) served / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "%d hits, %d revalidated, %d misses (%.1f%%)",
+                getHitCount(), getRevalidatedCount(), getMissCount(), getHitRatio() * 100f);
+    }
+
+    //endregion
+
+    //region Storage
+
+    private File getFile(final String url) {
+        return new File(mDir, sha1(url) + EXTENSION);
+    }
+
+    private synchronized Entry read(final File file) {
+        if (!file.isFile())
+            return null;
+
+        try {
+            final JSONObject json = new JSONObject(
+                    new String(FileUtils.readBinaryFile(file), UTF8));
+            return new Entry(json.getString("etag"), json.getString("body"));
+        } catch (JSONException e) {
+            // Corrupted, it will be retrieved again
+            delete(file);
+            return null;
+        }
+    }
+
+    private synchronized void write(final File file, final Entry entry) {
+        try {
+            final JSONObject json = new JSONObject();
+            json.put("etag", entry.etag);
+            json.put("body", entry.body);
+            if (mDir.isDirectory() || mDir.mkdirs())
+                FileUtils.writeFile(file, json.toString());
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private synchronized void delete(final File file) {
+        if (file.exists() && !file.delete())
+            file.deleteOnExit();
+    }
+
+    // Removes the oldest entries until the cache fits its size
+    private synchronized void trim() {
+        final File[] files = mDir.listFiles();
+        if (files == null)
+            return;
+
+        long size = 0;
+        for (File file : files)
+            size += file.length();
+
+        if (size <= mMaxSize)
+            return;
+
+        // Read once, since files may be touched while sorting (which would break its contract)
+        final long[] modified = new long[files.length];
+        final Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; ++i) {
+            modified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                // Not Long.compare, which needs API 19
+                final long a = modified[i1], b = modified[i2];
+                return a < b ? -1 : (a == b ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < order.length && size > mMaxSize; ++i) {
+            final File file = files[order[i]];
+            size -= file.length();
+            delete(file);
+        }
+    }
+
+    private static String sha1(final String text) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(text.getBytes(UTF8));
+            final StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+                sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Won't happen, every implementation must support SHA-1
+            throw new RuntimeException(e);
+        }
+    }
+
+    //endregion
+}
@@ -0,0 +1,579 @@
+package io.github.lonamiwebs.stringlate.classes.net;
+
+import net.gsantner.opoc.util.Callback;
+import net.gsantner.opoc.util.FileUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+// Small HTTP client shared by everything that talks to a server.
+//
+// HttpURLConnection already keeps a pool of persistent (keep-alive) connections
+// per host, but it can only reuse a connection once its response body has been
+// read until the end and closed, and as long as disconnect() is never called.
+// Responses here take care of that when closed, so calls made one after another
+// (or from a few threads) to the same host don't pay for a new TCP+TLS handshake.
+public class HttpClient {
+
+    //region Constants
+
+    public static final String GET = "GET";
+    public static final String POST = "POST";
+    public static final String PATCH = "PATCH";
+
+    // Results of downloadIfModified()
+    public static final int DOWNLOAD_DONE = 0;
+    public static final int DOWNLOAD_FAILED = 2;
+    public static final int DOWNLOAD_NOT_MODIFIED = 3;
+
+    public static final int DEFAULT_CONNECT_TIMEOUT_MS = 15 * 1000;
+    public static final int DEFAULT_READ_TIMEOUT_MS = 30 * 1000;
+
+    private static final String UTF8 = "UTF-8";
+    private static final String USER_AGENT = "Stringlate";
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int HTTP_PARTIAL_CONTENT = 206;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    private static final String PART_EXTENSION = ".part";
+    private static final String VALIDATOR_EXTENSION = ".part.validator";
+    private static final int MAX_DOWNLOAD_ATTEMPTS = 5;
+    private static final long DOWNLOAD_RETRY_DELAY_MS = 500;
+    private static final int DOWNLOAD_RETRY = 1; // Only used internally
+
+    private static final Pattern CONTENT_RANGE_PATTERN =
+            Pattern.compile("bytes (\\d+)-\\d+/(\\d+|\\*)");
+    private static final Pattern UNSATISFIED_RANGE_PATTERN =
+            Pattern.compile("bytes \\*/(\\d+)");
+
+    // Leftovers bigger than this aren't worth reading just to keep the connection
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private static final HttpClient sDefault =
+            new HttpClient(DEFAULT_CONNECT_TIMEOUT_MS, DEFAULT_READ_TIMEOUT_MS);
+
+    //endregion
+
+    //region Members
+
+    private final int mConnectTimeout;
+    private final int mReadTimeout;
+
+    //endregion
+
+    //region Constructor
+
+    public HttpClient(final int connectTimeoutMs, final int readTimeoutMs) {
+        mConnectTimeout = connectTimeoutMs;
+        mReadTimeout = readTimeoutMs;
+    }
+
+    public static HttpClient getDefault() {
+        return sDefault;
+    }
+
+    //endregion
+
+    //region Requests
+
+    public static class Request {
+        final String url;
+        String method = GET;
+        final LinkedHashMap<String, String> headers = new LinkedHashMap<>();
+        byte[] body;
+        boolean compressed = true;
+
+        public Request(final String url) {
+            this.url = url;
+        }
+
+        public Request method(final String method) {
+            this.method = method;
+            return this;
+        }
+
+        public Request header(final String name, final String value) {
+            if (value != null)
+                headers.put(name, value);
+            return this;
+        }
+
+        // Makes the request conditional, so the server replies 304 Not Modified
+        // with no body if the entity tag of the resource is still the same
+        public Request ifNoneMatch(final String etag) {
+            return header("If-None-Match", etag);
+        }
+
+        public Request body(final String content, final String contentType) {
+            body = content == null ? null : content.getBytes(Charset.forName(UTF8));
+            return header("Content-Type", contentType);
+        }
+
+        public Request json(final Object json) {
+            return body(json == null ? null : json.toString(), "application/json; charset=utf-8");
+        }
+
+        // URL encoded parameters, as a HTML form would send them
+        public Request form(final Map<String, String> params) {
+            final StringBuilder sb = new StringBuilder();
+            try {
+                for (Map.Entry<String, String> param : params.entrySet()) {
+                    if (sb.length() != 0)
+                        sb.append('&');
+                    sb.append(URLEncoder.encode(param.getKey(), UTF8)).append('=')
+                            .append(URLEncoder.encode(param.getValue(), UTF8));
+                }
+            } catch (UnsupportedEncodingException e) {
+                // Won't happen
+                e.printStackTrace();
+            }
+            return body(sb.toString(), "application/x-www-form-urlencoded");
+        }
+
+        // Whether the server may gzip or deflate the body. Files which are
+        // already compressed (e.g. .jar or .png) gain nothing from it.
+        public Request compressed(final boolean compressed) {
+            this.compressed = compressed;
+            return this;
+        }
+    }
+
+    // Executes the request. The response must always be closed, even if the
+    // body isn't needed, since that's what lets the connection be reused.
+    // Throws if the server couldn't be reached, but not on HTTP error codes.
+    public Response execute(final Request request) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(request.url).openConnection();
+        connection.setConnectTimeout(mConnectTimeout);
+        connection.setReadTimeout(mReadTimeout);
+        connection.setRequestMethod(request.method);
+        connection.setInstanceFollowRedirects(true);
+        connection.setUseCaches(false);
+        connection.setRequestProperty("User-Agent", USER_AGENT);
+        connection.setRequestProperty("Accept-Encoding", request.compressed ? "gzip, deflate" : "identity");
+        for (Map.Entry<String, String> header : request.headers.entrySet())
+            connection.setRequestProperty(header.getKey(), header.getValue());
+
+        try {
+            if (request.body != null) {
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(request.body.length);
+                final OutputStream output = connection.getOutputStream();
+                try {
+                    output.write(request.body);
+                } finally {
+                    output.close();
+                }
+            }
+            return new Response(connection);
+        } catch (IOException e) {
+            // The connection is broken anyway, so it must not go back to the pool
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    // Convenience method to retrieve a whole body as a string, or null on failure
+    public String getString(final String url) {
+        Response response = null;
+        try {
+            response = execute(new Request(url));
+            return response.isSuccessful() ? response.readString() : null;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            if (response != null)
+                response.close();
+        }
+    }
+
+    // Downloads the body of the given url to the output file, creating its parent
+    // directory if it doesn't exist. The file is only replaced if the download succeeds.
+    public boolean download(final String url, final File outFile, final Callback.a1<Float> progressCallback) {
+        return download(url, outFile, null, progressCallback);
+    }
+
+    // Downloads the given url into "<outFile>.part", which is only renamed to the output
+    // file once its length (and SHA-256 checksum, if one is given) has been validated.
+    //
+    // If the connection drops, the download resumes where it stopped by requesting the
+    // remaining range, which also happens across calls as long as the ".part" file is
+    // still there. The server's validator (ETag or Last-Modified) is sent as If-Range,
+    // so if the file changed in between the server sends it whole again instead.
+    public boolean download(final String url, final File outFile, final String sha256,
+                            final Callback.a1<Float> progressCallback) {
+        return download(url, outFile, sha256, null, progressCallback) == DOWNLOAD_DONE;
+    }
+
+    // Like download(), but conditional on the validator that a previous call saved into
+    // lastValidatorFile, so nothing is downloaded if the file didn't change since, and
+    // DOWNLOAD_NOT_MODIFIED is returned. Otherwise, the new validator is saved there.
+    public int downloadIfModified(final String url, final File outFile, final File lastValidatorFile,
+                                  final Callback.a1<Float> progressCallback) {
+        return download(url, outFile, null, lastValidatorFile, progressCallback);
+    }
+
+    private int download(final String url, final File outFile, final String sha256,
+                         final File lastValidatorFile, final Callback.a1<Float> progressCallback) {
+        final File parent = outFile.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs())
+            return DOWNLOAD_FAILED;
+
+        final String lastValidator = lastValidatorFile != null && lastValidatorFile.isFile()
+                ? FileUtils.readTextFileFast(lastValidatorFile) : null;
+
+        final File partFile = new File(parent, outFile.getName() + PART_EXTENSION);
+        final File validatorFile = new File(parent, outFile.getName() + VALIDATOR_EXTENSION);
+
+        for (int attempt = 0; attempt < MAX_DOWNLOAD_ATTEMPTS; ++attempt) {
+            if (attempt > 0) {
+                try {
+                    Thread.sleep(DOWNLOAD_RETRY_DELAY_MS << (attempt - 1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return DOWNLOAD_FAILED;
+                }
+            }
+
+            final int result = downloadPart(url, partFile, validatorFile, lastValidator, progressCallback);
+            if (result == DOWNLOAD_RETRY)
+                continue;
+            if (result != DOWNLOAD_DONE)
+                return result;
+
+            // The part is complete, but it must be what we expected before using it
+            if (sha256 != null && !sha256.equalsIgnoreCase(sha256(partFile))) {
+                delete(partFile);
+                delete(validatorFile);
+                return DOWNLOAD_FAILED;
+            }
+
+            if (lastValidatorFile != null) {
+                delete(lastValidatorFile);
+                if (validatorFile.isFile() && !validatorFile.renameTo(lastValidatorFile))
+                    delete(lastValidatorFile);
+            }
+            delete(validatorFile);
+
+            // Renaming is atomic on the same file system, so the output file is
+            // either the old one or the complete new one, never a partial one
+            if (partFile.renameTo(outFile) || (delete(outFile) && partFile.renameTo(outFile)))
+                return DOWNLOAD_DONE;
+            return DOWNLOAD_FAILED;
+        }
+        return DOWNLOAD_FAILED;
+    }
+
+    // Downloads (or continues downloading) into the part file. Returns DOWNLOAD_DONE
+    // when it contains the whole file, or whether it's worth trying again otherwise.
+    private int downloadPart(final String url, final File partFile, final File validatorFile,
+                             final String lastValidator, final Callback.a1<Float> progressCallback) {
+        long offset = partFile.isFile() ? partFile.length() : 0;
+        final String validator = validatorFile.isFile() ? FileUtils.readTextFileFast(validatorFile) : "";
+        if (offset > 0 && validator.isEmpty()) {
+            // Can't tell whether the file changed since, so it must be downloaded again
+            delete(partFile);
+            offset = 0;
+        }
+
+        final Request request = new Request(url).compressed(false);
+        if (offset > 0) {
+            request.header("Range", "bytes=" + offset + "-").header("If-Range", validator);
+        } else if (lastValidator != null && !lastValidator.isEmpty()) {
+            // Entity tags are always quoted, while dates never are
+            if (lastValidator.startsWith("\"") || lastValidator.startsWith("W/"))
+                request.ifNoneMatch(lastValidator);
+            else
+                request.header("If-Modified-Since", lastValidator);
+        }
+
+        Response response = null;
+        OutputStream output = null;
+        try {
+            response = execute(request);
+            if (response.isNotModified())
+                return DOWNLOAD_NOT_MODIFIED;
+
+            final long length;
+            if (offset > 0 && response.code == HTTP_PARTIAL_CONTENT) {
+                // "Content-Range: bytes <first>-<last>/<length>", with length possibly "*"
+                final Matcher m = CONTENT_RANGE_PATTERN.matcher(
+                        String.valueOf(response.getHeader("Content-Range")));
+                if (!m.matches() || Long.parseLong(m.group(1)) != offset) {
+                    delete(partFile);
+                    return DOWNLOAD_RETRY;
+                }
+                length = m.group(2).equals("*") ? -1 : Long.parseLong(m.group(2));
+            } else if (response.code == HTTP_RANGE_NOT_SATISFIABLE) {
+                // "Content-Range: bytes */<length>", the part file may be complete already
+                final Matcher m = UNSATISFIED_RANGE_PATTERN.matcher(
+                        String.valueOf(response.getHeader("Content-Range")));
+                if (m.matches() && Long.parseLong(m.group(1)) == offset)
+                    return DOWNLOAD_DONE;
+
+                delete(partFile);
+                return DOWNLOAD_RETRY;
+            } else if (response.isSuccessful()) {
+                // The whole file, either because we asked for it or because it changed
+                offset = 0;
+                length = response.getContentLength();
+                String newValidator = response.getETag();
+                if (newValidator == null)
+                    newValidator = response.getHeader("Last-Modified");
+                if (newValidator == null || !FileUtils.writeFile(validatorFile, newValidator))
+                    delete(validatorFile);
+            } else {
+                // Client errors won't go away by trying again, server errors might
+                return response.code >= 500 ? DOWNLOAD_RETRY : DOWNLOAD_FAILED;
+            }
+
+            output = new FileOutputStream(partFile, offset > 0);
+            final InputStream input = response.getStream();
+
+            int count;
+            long written = offset;
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            while ((count = input.read(buffer)) != -1) {
+                output.write(buffer, 0, count);
+                written += count;
+                if (length > 0 && progressCallback != null)
+                    progressCallback.callback((float) written / length);
+            }
+
+            if (length >= 0 && written != length) {
+                // Truncated or too long, neither can be trusted
+                if (written > length)
+                    delete(partFile);
+                return DOWNLOAD_RETRY;
+            }
+            return DOWNLOAD_DONE;
+        } catch (IOException | NumberFormatException e) {
+            // Whatever was written so far is kept so it can be resumed
+            e.printStackTrace();
+            return DOWNLOAD_RETRY;
+        } finally {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException ignored) {
+                }
+            }
+            if (response != null)
+                response.close();
+        }
+    }
+
+    private static String sha256(final File file) {
+        InputStream input = null;
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            input = new FileInputStream(file);
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = input.read(buffer)) != -1)
+                digest.update(buffer, 0, count);
+
+            final StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest())
+                sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (IOException | NoSuchAlgorithmException e) {
+            e.printStackTrace();
+            return "";
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private static boolean delete(final File file) {
+        return !file.exists() || file.delete();
+    }
+
+    //endregion
+
+    //region Responses
+
+    public static class Response implements Closeable {
+        public final int code;
+        private final HttpURLConnection mConnection;
+        private InputStream mStream;
+        private boolean mConsumed;
+
+        Response(final HttpURLConnection connection) throws IOException {
+            mConnection = connection;
+            code = connection.getResponseCode();
+        }
+
+        public boolean isSuccessful() {
+            return code >= 200 && code < 300;
+        }
+
+        public boolean isNotModified() {
+            return code == HttpURLConnection.HTTP_NOT_MODIFIED;
+        }
+
+        // Header names are case insensitive. Returns null if the header is not present
+        public String getHeader(final String name) {
+            for (Map.Entry<String, List<String>> header : getHeaders().entrySet()) {
+                if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty())
+                    return header.getValue().get(0);
+            }
+            return null;
+        }
+
+        public Map<String, List<String>> getHeaders() {
+            final Map<String, List<String>> headers = mConnection.getHeaderFields();
+            return headers == null ? Collections.<String, List<String>>emptyMap() : headers;
+        }
+
+        public String getETag() {
+            return getHeader("ETag");
+        }
+
+        // Length of the body as sent by the server (i.e. compressed), or -1 if unknown
+        public long getContentLength() {
+            final String length = getHeader("Content-Length");
+            if (length != null) {
+                try {
+                    return Long.parseLong(length.trim());
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            return -1;
+        }
+
+        // The (decompressed) body, read as it arrives from the network. The
+        // error body is returned for non-successful codes. Never returns null.
+        public InputStream getStream() throws IOException {
+            if (mStream == null) {
+                InputStream raw;
+                try {
+                    raw = code < HttpURLConnection.HTTP_BAD_REQUEST
+                            ? mConnection.getInputStream() : mConnection.getErrorStream();
+                } catch (IOException e) {
+                    raw = mConnection.getErrorStream();
+                    if (raw == null)
+                        throw e;
+                }
+                if (raw == null)
+                    raw = new EmptyInputStream();
+
+                final String encoding = getHeader("Content-Encoding");
+                if (encoding != null && code != HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    switch (encoding.trim().toLowerCase(Locale.ENGLISH)) {
+                        case "gzip":
+                            raw = new GZIPInputStream(raw, BUFFER_SIZE);
+                            break;
+                        case "deflate":
+                            // Servers disagree whether this means zlib or raw deflate,
+                            // the former being the correct one and the most common
+                            raw = new InflaterInputStream(raw, new Inflater(), BUFFER_SIZE);
+                            break;
+                    }
+                }
+                mStream = new ConsumeTrackingStream(raw);
+            }
+            return mStream;
+        }
+
+        // Reads the whole body as UTF-8 text (preserving it as-is) and closes the response
+        public String readString() throws IOException {
+            try {
+                final InputStream input = getStream();
+                final ByteArrayOutputStream output = new ByteArrayOutputStream();
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                int count;
+                while ((count = input.read(buffer)) != -1)
+                    output.write(buffer, 0, count);
+                return output.toString(UTF8);
+            } finally {
+                close();
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                final InputStream input = getStream();
+                if (!mConsumed) {
+                    // Drain whatever is left so the connection can be reused,
+                    // unless there's so much left that a new one is cheaper
+                    final byte[] buffer = new byte[BUFFER_SIZE];
+                    int drained = 0;
+                    int count;
+                    while (drained < MAX_DRAIN_BYTES && (count = input.read(buffer)) != -1)
+                        drained += count;
+                    if (!mConsumed) {
+                        mConnection.disconnect();
+                        return;
+                    }
+                }
+                input.close();
+            } catch (IOException ignored) {
+                mConnection.disconnect();
+            }
+        }
+
+        // Remembers whether the end of the stream was reached
+        private class ConsumeTrackingStream extends FilterInputStream {
+            ConsumeTrackingStream(final InputStream in) {
+                super(in);
+            }
+
+            @Override
+            public int read() throws IOException {
+                final int result = super.read();
+                if (result == -1)
+                    mConsumed = true;
+                return result;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                final int result = super.read(b, off, len);
+                if (result == -1)
+                    mConsumed = true;
+                return result;
+            }
+        }
+    }
+
+    private static class EmptyInputStream extends InputStream {
+        @Override
+        public int read() {
+            return -1;
+        }
+    }
+
+    //endregion
+}
@@ -0,0 +1,262 @@
+package io.github.lonamiwebs.stringlate.classes.repos;
+
+import net.gsantner.opoc.util.FileUtils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+
+// Content-addressed store shared by every repository under the same work directory.
+// Files which are only written when syncing (such as the original translated files
+// and the icons) are saved once by the hash of their contents, and each repository
+// keeps a Manifest of which blob is found under which of its paths. Forks and branches
+// of the same project share almost every file, so they hardly take any extra space.
+//
+// Blobs must never be modified once written, since other repositories may use them.
+public class BlobStore {
+
+    //region Members
+
+    private static final String DIR = ".blobs";
+    private static final String MANIFEST_FILENAME = "blobs.json";
+
+    // Blobs not referenced by any manifest are only deleted after this long,
+    // so a repository being synced has time to save the manifest using them
+    private static final long GC_GRACE_MILLIS = 60 * 60 * 1000;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File mWorkDir;
+    private final File mRoot;
+
+    //endregion
+
+    //region Constructor
+
+    public BlobStore(final File workDir) {
+        mWorkDir = workDir;
+        mRoot = new File(workDir, DIR);
+    }
+
+    //endregion
+
+    //region Storing
+
+    // Saves the content and returns the name of its blob. The extension of the given
+    // filename is kept, so the type of the file can still be told by its name.
+    // Storing content which is already in the store doesn't write anything.
+    public String put(final String filename, final byte[] content) throws IOException {
+        final String blob = hash(content) + getExtension(filename);
+        final File file = getFile(blob);
+        if (file.isFile()) {
+            // Touch it so it's not collected before the manifest using it is saved
+            final long now = System.currentTimeMillis();
+            if (file.lastModified() < now - GC_GRACE_MILLIS / 2)
+                //noinspection ResultOfMethodCallIgnored
+                file.setLastModified(now);
+            return blob;
+        }
+
+        final File parent = file.getParentFile();
+        if (!parent.mkdirs() && !parent.isDirectory())
+            throw new IOException("Could not create directory " + parent);
+
+        // Written under another name first, so a blob is either complete or missing
+        final File tmpFile = new File(parent, blob + "." + Thread.currentThread().getId() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tmpFile);
+            out.write(content);
+            out.close();
+            out = null;
+
+            // Someone else may have stored the same content meanwhile, which is fine
+            if (!tmpFile.renameTo(file) && !file.isFile())
+                throw new IOException("Could not save blob " + blob);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+            }
+            if (tmpFile.exists() && !tmpFile.delete())
+                tmpFile.deleteOnExit();
+        }
+        return blob;
+    }
+
+    public String put(final String filename, final String content) throws IOException {
+        return put(filename, content.getBytes(UTF8));
+    }
+
+    public String put(final File file) throws IOException {
+        final byte[] content = FileUtils.readBinaryFile(file);
+        if (content == null)
+            throw new IOException("Could not read " + file);
+        return put(file.getName(), content);
+    }
+
+    // Blobs are spread over directories by the start of their hash, to keep them small
+    public File getFile(final String blob) {
+        return new File(new File(mRoot, blob.substring(0, 2)), blob);
+    }
+
+    //endregion
+
+    //region Collecting garbage
+
+    // Deletes the blobs no longer referenced by the manifest of any repository
+    // (or any of their branch snapshots).
+    // Returns how many were deleted.
+    public int gc() {
+        final HashSet<String> used = new HashSet<>();
+        final File[] repos = mWorkDir.listFiles();
+        if (repos != null) {
+            for (File repo : repos) {
+                if (!repo.isDirectory() || repo.equals(mRoot))
+                    continue;
+
+                used.addAll(new Manifest(repo).mBlobs.values());
+                final File[] branches = new File(repo, RepoHandler.BRANCHES_DIR).listFiles();
+                if (branches != null) {
+                    for (File branch : branches)
+                        used.addAll(new Manifest(branch).mBlobs.values());
+                }
+            }
+        }
+
+        int deleted = 0;
+        final long oldest = System.currentTimeMillis() - GC_GRACE_MILLIS;
+        final File[] dirs = mRoot.listFiles();
+        if (dirs == null)
+            return 0;
+
+        for (File dir : dirs) {
+            final File[] blobs = dir.listFiles();
+            if (blobs == null)
+                continue;
+
+            for (File blob : blobs) {
+                if (!used.contains(blob.getName()) && blob.lastModified() < oldest && blob.delete())
+                    deleted++;
+            }
+            // Only succeeds if it's empty
+            //noinspection ResultOfMethodCallIgnored
+            dir.delete();
+        }
+        return deleted;
+    }
+
+    //endregion
+
+    //region Manifest
+
+    // Which blob (by name) is found under which path (relative to the repository root)
+    public static class Manifest {
+        private final File mFile;
+        private final HashMap<String, String> mBlobs = new HashMap<>();
+
+        public Manifest(final File repoDir) {
+            mFile = new File(repoDir, MANIFEST_FILENAME);
+            load();
+        }
+
+        private void load() {
+            mBlobs.clear();
+            if (!mFile.isFile())
+                return;
+
+            try {
+                final JSONObject json = new JSONObject(FileUtils.readTextFile(mFile));
+                final Iterator<String> paths = json.keys();
+                while (paths.hasNext()) {
+                    final String path = paths.next();
+                    mBlobs.put(path, json.getString(path));
+                }
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
+
+        public synchronized boolean save() {
+            if (mBlobs.isEmpty())
+                return !mFile.exists() || mFile.delete();
+
+            return FileUtils.writeFile(mFile, new JSONObject(mBlobs).toString());
+        }
+
+        public synchronized void reload() {
+            load();
+        }
+
+        // Returns null if there is no blob under this path
+        public synchronized String get(final String path) {
+            return mBlobs.get(path);
+        }
+
+        public synchronized void put(final String path, final String blob) {
+            mBlobs.put(path, blob);
+        }
+
+        public synchronized void remove(final String path) {
+            mBlobs.remove(path);
+        }
+
+        // Removes every path starting with the given prefix
+        public synchronized void removeAll(final String prefix) {
+            final Iterator<String> paths = mBlobs.keySet().iterator();
+            while (paths.hasNext()) {
+                if (paths.next().startsWith(prefix))
+                    paths.remove();
+            }
+        }
+
+        // The paths which start with the given prefix, without the prefix itself
+        public synchronized ArrayList<String> list(final String prefix) {
+            final ArrayList<String> result = new ArrayList<>();
+            for (String path : mBlobs.keySet()) {
+                if (path.startsWith(prefix))
+                    result.add(path.substring(prefix.length()));
+            }
+            return result;
+        }
+
+        public synchronized HashMap<String, String> getAll() {
+            return new HashMap<>(mBlobs);
+        }
+    }
+
+    //endregion
+
+    //region Utilities
+
+    static String hash(final byte[] content) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(content);
+            final StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+                sb.append(String.format("%02x", b & 0xff));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e); // Every implementation must support SHA-1
+        }
+    }
+
+    private static String getExtension(final String filename) {
+        final int dot = filename.lastIndexOf('.');
+        return dot == -1 ? "" : filename.substring(dot);
+    }
+
+    //endregion
+}
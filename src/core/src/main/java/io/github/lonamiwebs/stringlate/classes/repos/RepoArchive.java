@@ -0,0 +1,540 @@
+package io.github.lonamiwebs.stringlate.classes.repos;
+
+import net.gsantner.opoc.util.Callback;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// Writes repositories as .zip archives. Every entry is compressed on its own thread
+// (zip entries are independent of each other, so this is allowed by the format) and
+// then written in order, and files which are already compressed are simply stored.
+// Importing works the other way around, inflating every entry on its own thread.
+//
+// Every archive starts with an INFO_FILENAME entry (under its root) saying which kind
+// of archive it is, so that archives which aren't full repositories (if other kinds
+// are ever written) can't replace a repository when imported.
+public class RepoArchive {
+
+    //region Members
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Compressing these again takes time and gains nothing
+    private static final String[] STORED_EXTENSIONS = {
+            ".png", ".jpg", ".jpeg", ".gif", ".webp", ".zip", ".jar", ".apk", ".gz"
+    };
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int VERSION_NEEDED = 20;
+    private static final int FLAG_UTF8 = 1 << 11;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    private static final long MAX_ZIP32 = 0xffffffffL;
+
+    public static final String INFO_FILENAME = "archive.json";
+    public static final String KIND_FULL = "full";
+
+    //endregion
+
+    //region Exporting
+
+    // Exports the given directory (which becomes the only root of the archive)
+    public static void exportZip(final File root, final OutputStream output) throws IOException {
+        exportZip(root, Collections.<String, File>emptyMap(), output);
+    }
+
+    // Same as above, but the linked files (by their path relative to root) are exported
+    // as if they were found under root, replacing any file which is actually there
+    public static void exportZip(final File root, final Map<String, File> linked,
+                                 final OutputStream output) throws IOException {
+        final ArrayList<File> files = new ArrayList<>();
+        final ArrayList<String> paths = new ArrayList<>();
+        listFiles(root, files, paths);
+        // Our own info always goes first, so never export a file which would replace it
+        final int info = paths.indexOf(root.getName() + "/" + INFO_FILENAME);
+        if (info != -1) {
+            files.remove(info);
+            paths.remove(info);
+        }
+        if (!linked.isEmpty()) {
+            final String prefix = root.getName() + "/";
+            for (int i = paths.size(); i-- != 0; ) {
+                if (linked.containsKey(paths.get(i).substring(prefix.length()))) {
+                    files.remove(i);
+                    paths.remove(i);
+                }
+            }
+            final ArrayList<String> linkedPaths = new ArrayList<>(linked.keySet());
+            Collections.sort(linkedPaths);
+            for (String path : linkedPaths) {
+                files.add(linked.get(path));
+                paths.add(prefix + path);
+            }
+        }
+
+        final int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            // Only a limited amount of entries are compressed ahead of the one being
+            // written, so the memory used doesn't grow with the size of the repository
+            final int window = threads * 2;
+            final ArrayDeque<Future<Entry>> pending = new ArrayDeque<>(window);
+            final ZipWriter writer = new ZipWriter(output);
+            writer.write(Entry.compress(root.getName() + "/" + INFO_FILENAME,
+                    System.currentTimeMillis(), getInfo()));
+
+            for (int i = 0; i < files.size(); ++i) {
+                final File file = files.get(i);
+                final String path = paths.get(i);
+                pending.add(executor.submit(new Callable<Entry>() {
+                    @Override
+                    public Entry call() throws IOException {
+                        return Entry.compress(path, file);
+                    }
+                }));
+                if (pending.size() == window)
+                    writer.write(getResult(pending.poll()));
+            }
+            while (!pending.isEmpty())
+                writer.write(getResult(pending.poll()));
+
+            writer.finish();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static byte[] getInfo() {
+        final JSONObject json = new JSONObject();
+        try {
+            json.put("kind", KIND_FULL);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return json.toString().getBytes(UTF8);
+    }
+
+    // Lists every file under root, in a stable order, with their path in the archive
+    private static void listFiles(final File root, final ArrayList<File> files,
+                                  final ArrayList<String> paths) {
+        final ArrayDeque<File> dirs = new ArrayDeque<>();
+        final ArrayDeque<String> prefixes = new ArrayDeque<>();
+        dirs.add(root);
+        prefixes.add(root.getName());
+        while (!dirs.isEmpty()) {
+            final File dir = dirs.poll();
+            final String prefix = prefixes.poll();
+            final File[] children = dir.listFiles();
+            if (children == null)
+                continue;
+
+            Arrays.sort(children);
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    dirs.add(child);
+                    prefixes.add(prefix + "/" + child.getName());
+                } else {
+                    files.add(child);
+                    paths.add(prefix + "/" + child.getName());
+                }
+            }
+        }
+    }
+
+    private static <T> T getResult(final Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    //endregion
+
+    //region Importing
+
+    // Extracts an archive into the given (empty) staging directory, returning the root of
+    // the repository inside it. The central directory of the archive lists every entry,
+    // so the whole archive is validated before a single file is extracted: it must have
+    // one root directory with valid settings, no entry may point outside of it, and it
+    // must be a full archive (of a kind this version knows).
+    public static File importZip(final File zipFile, final File staging,
+                                 final Callback.a1<Float> progress) throws IOException {
+        final ZipFile zip = new ZipFile(zipFile);
+        final int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            String rootName = null;
+            ZipEntry settings = null;
+            ZipEntry info = null;
+            long total = 0;
+            final ArrayList<ZipEntry> entries = new ArrayList<>();
+            final Enumeration<? extends ZipEntry> enumeration = zip.entries();
+            while (enumeration.hasMoreElements()) {
+                final ZipEntry entry = enumeration.nextElement();
+                final String name = entry.getName();
+                final int slash = name.indexOf('/');
+                if (slash <= 0 || !isSafePath(name))
+                    throw new IOException("Invalid entry in the archive: " + name);
+
+                final String first = name.substring(0, slash);
+                if (rootName == null)
+                    rootName = first;
+                else if (!rootName.equals(first))
+                    throw new IOException("The archive should only contain the repository's root.");
+
+                if (name.equals(rootName + "/" + RepoSettings.FILENAME))
+                    settings = entry;
+
+                if (name.equals(rootName + "/" + INFO_FILENAME)) {
+                    info = entry;
+                    continue; // Not part of the repository
+                }
+
+                entries.add(entry);
+                total += Math.max(0, entry.getSize());
+            }
+            // Archives made before the info was written are all full
+            if (info != null)
+                checkInfo(zip, info);
+            if (settings == null)
+                throw new IOException("The archive does not contain the repository's settings.");
+
+            checkSettings(zip, settings);
+
+            // Entries are independent of each other, so they're inflated on their own
+            // thread. Canonical paths are checked too in case of (sym)links in staging.
+            final String stagingPath = staging.getCanonicalPath() + File.separator;
+            final ArrayList<Future<ZipEntry>> pending = new ArrayList<>(entries.size());
+            for (final ZipEntry entry : entries) {
+                final File file = new File(staging, entry.getName());
+                if (!file.getCanonicalPath().startsWith(stagingPath))
+                    throw new IOException("Invalid entry in the archive: " + entry.getName());
+
+                pending.add(executor.submit(new Callable<ZipEntry>() {
+                    @Override
+                    public ZipEntry call() throws IOException {
+                        extract(zip, entry, file);
+                        return entry;
+                    }
+                }));
+            }
+
+            // Progress is reported here, from the entry sizes, and not from the workers
+            long done = 0;
+            for (Future<ZipEntry> future : pending) {
+                done += Math.max(0, getResult(future).getSize());
+                if (progress != null && total > 0)
+                    progress.callback((float) done / total);
+            }
+            return new File(staging, rootName);
+        } finally {
+            executor.shutdownNow();
+            zip.close();
+        }
+    }
+
+    // Rejects absolute paths and any path going up (or with separators we don't expect)
+    private static boolean isSafePath(final String name) {
+        if (name.startsWith("/") || name.indexOf('\\') != -1 || name.indexOf('\0') != -1)
+            return false;
+
+        for (String part : name.split("/")) {
+            if (part.equals("..") || part.equals("."))
+                return false;
+        }
+        return true;
+    }
+
+    private static void checkSettings(final ZipFile zip, final ZipEntry entry) throws IOException {
+        try {
+            readJson(zip, entry);
+        } catch (JSONException e) {
+            throw new IOException("The repository's settings are not valid.", e);
+        }
+    }
+
+    private static void checkInfo(final ZipFile zip, final ZipEntry entry) throws IOException {
+        final String kind;
+        try {
+            kind = readJson(zip, entry).getString("kind");
+        } catch (JSONException e) {
+            throw new IOException("The archive's information is not valid.", e);
+        }
+        if (!KIND_FULL.equals(kind))
+            throw new IOException("Unknown kind of archive: " + kind);
+    }
+
+    private static JSONObject readJson(final ZipFile zip, final ZipEntry entry)
+            throws IOException, JSONException {
+        final InputStream input = zip.getInputStream(entry);
+        try {
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) != -1)
+                output.write(buffer, 0, read);
+
+            return new JSONObject(new String(output.toByteArray(), UTF8));
+        } finally {
+            input.close();
+        }
+    }
+
+    private static void extract(final ZipFile zip, final ZipEntry entry,
+                                final File file) throws IOException {
+        if (entry.isDirectory()) {
+            if (!file.isDirectory() && !file.mkdirs())
+                throw new IOException("Could not create directory " + file);
+            return;
+        }
+
+        final File parent = file.getParentFile();
+        // Another worker may be creating the same parent at the same time
+        if (!parent.mkdirs() && !parent.isDirectory())
+            throw new IOException("Could not create directory " + parent);
+
+        final InputStream input = zip.getInputStream(entry);
+        OutputStream output = null;
+        try {
+            output = new FileOutputStream(file);
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) != -1)
+                output.write(buffer, 0, read);
+        } finally {
+            input.close();
+            if (output != null)
+                output.close();
+        }
+        // Best effort, so the files keep the time they had when they were exported
+        if (entry.getTime() != -1)
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(entry.getTime());
+    }
+
+    //endregion
+
+    //region Entries
+
+    // A file, already compressed and ready to be written
+    private static class Entry {
+        final String path;
+        final byte[] name;
+        final long modified;
+        final long size;
+        final long crc;
+        final int method;
+        final byte[] data;
+        final int dataLength;
+
+        private Entry(final String path, final long modified, final long size, final long crc,
+                      final int method, final byte[] data, final int dataLength) {
+            this.path = path;
+            this.name = path.getBytes(UTF8);
+            this.modified = modified;
+            this.size = size;
+            this.crc = crc;
+            this.method = method;
+            this.data = data;
+            this.dataLength = dataLength;
+        }
+
+        static Entry compress(final String path, final File file) throws IOException {
+            return compress(path, file.lastModified(), readFile(file));
+        }
+
+        static Entry compress(final String path, final long modified, final byte[] content) {
+            final CRC32 crc = new CRC32();
+            crc.update(content, 0, content.length);
+
+            if (isStored(path))
+                return new Entry(path, modified, content.length, crc.getValue(),
+                        METHOD_STORED, content, content.length);
+
+            // Raw deflate (no zlib header), which is what zip entries contain
+            final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                deflater.setInput(content);
+                deflater.finish();
+                final ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2 + 64);
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                while (!deflater.finished()) {
+                    final int count = deflater.deflate(buffer);
+                    out.write(buffer, 0, count);
+                }
+
+                // Tiny or random files may grow, in which case storing them is better
+                if (out.size() >= content.length)
+                    return new Entry(path, modified, content.length, crc.getValue(),
+                            METHOD_STORED, content, content.length);
+
+                return new Entry(path, modified, content.length, crc.getValue(),
+                        METHOD_DEFLATED, out.toByteArray(), out.size());
+            } finally {
+                deflater.end();
+            }
+        }
+
+        private static boolean isStored(final String path) {
+            final String lower = path.toLowerCase(Locale.ENGLISH);
+            for (String extension : STORED_EXTENSIONS)
+                if (lower.endsWith(extension))
+                    return true;
+            return false;
+        }
+
+        private static byte[] readFile(final File file) throws IOException {
+            final long length = file.length();
+            if (length > Integer.MAX_VALUE)
+                throw new IOException("File too big to be exported: " + file);
+
+            final InputStream in = new FileInputStream(file);
+            try {
+                final byte[] result = new byte[(int) length];
+                int offset = 0;
+                int count;
+                while (offset < result.length &&
+                        (count = in.read(result, offset, result.length - offset)) != -1)
+                    offset += count;
+
+                return offset == result.length ? result : Arrays.copyOf(result, offset);
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    //endregion
+
+    //region Zip format
+
+    // Writes entries sequentially in the zip format (local headers and data, then the
+    // central directory). Entries must fit in the classic, non-zip64 format limits.
+    private static class ZipWriter {
+        private final OutputStream mOut;
+        private final ByteArrayOutputStream mCentral = new ByteArrayOutputStream();
+        private long mOffset;
+        private int mCount;
+
+        ZipWriter(final OutputStream out) {
+            mOut = new BufferedOutputStream(out, BUFFER_SIZE);
+        }
+
+        void write(final Entry entry) throws IOException {
+            if (mOffset > MAX_ZIP32 || entry.size > MAX_ZIP32 || mCount == 0xffff)
+                throw new IOException("The archive is too big");
+
+            final int dosTime = toDosTime(entry.modified);
+
+            writeInt(mOut, LOCAL_HEADER_SIGNATURE);
+            writeShort(mOut, VERSION_NEEDED);
+            writeShort(mOut, FLAG_UTF8);
+            writeShort(mOut, entry.method);
+            writeInt(mOut, dosTime);
+            writeInt(mOut, (int) entry.crc);
+            writeInt(mOut, entry.dataLength);
+            writeInt(mOut, (int) entry.size);
+            writeShort(mOut, entry.name.length);
+            writeShort(mOut, 0); // Extra field length
+            mOut.write(entry.name);
+            mOut.write(entry.data, 0, entry.dataLength);
+
+            writeInt(mCentral, CENTRAL_HEADER_SIGNATURE);
+            writeShort(mCentral, VERSION_NEEDED); // Version made by
+            writeShort(mCentral, VERSION_NEEDED);
+            writeShort(mCentral, FLAG_UTF8);
+            writeShort(mCentral, entry.method);
+            writeInt(mCentral, dosTime);
+            writeInt(mCentral, (int) entry.crc);
+            writeInt(mCentral, entry.dataLength);
+            writeInt(mCentral, (int) entry.size);
+            writeShort(mCentral, entry.name.length);
+            writeShort(mCentral, 0); // Extra field length
+            writeShort(mCentral, 0); // Comment length
+            writeShort(mCentral, 0); // Disk number
+            writeShort(mCentral, 0); // Internal attributes
+            writeInt(mCentral, 0); // External attributes
+            writeInt(mCentral, (int) mOffset);
+            mCentral.write(entry.name);
+
+            mOffset += 30 + entry.name.length + entry.dataLength;
+            mCount++;
+        }
+
+        void finish() throws IOException {
+            if (mOffset > MAX_ZIP32)
+                throw new IOException("The archive is too big");
+
+            mCentral.writeTo(mOut);
+            writeInt(mOut, END_SIGNATURE);
+            writeShort(mOut, 0); // This disk
+            writeShort(mOut, 0); // Disk with the central directory
+            writeShort(mOut, mCount);
+            writeShort(mOut, mCount);
+            writeInt(mOut, mCentral.size());
+            writeInt(mOut, (int) mOffset);
+            writeShort(mOut, 0); // Comment length
+            mOut.flush();
+        }
+
+        private static int toDosTime(final long millis) {
+            final Calendar c = Calendar.getInstance();
+            c.setTimeInMillis(millis);
+            final int year = c.get(Calendar.YEAR);
+            if (year < 1980)
+                return (1 << 21) | (1 << 16); // 1980-01-01 00:00
+
+            return (year - 1980) << 25 | (c.get(Calendar.MONTH) + 1) << 21 |
+                    c.get(Calendar.DAY_OF_MONTH) << 16 | c.get(Calendar.HOUR_OF_DAY) << 11 |
+                    c.get(Calendar.MINUTE) << 5 | c.get(Calendar.SECOND) >> 1;
+        }
+
+        private static void writeShort(final OutputStream out, final int value) throws IOException {
+            out.write(value & 0xff);
+            out.write((value >>> 8) & 0xff);
+        }
+
+        private static void writeInt(final OutputStream out, final int value) throws IOException {
+            writeShort(out, value & 0xffff);
+            writeShort(out, (value >>> 16) & 0xffff);
+        }
+    }
+
+    //endregion
+}
@@ -1,33 +1,48 @@
 package io.github.lonamiwebs.stringlate.classes.repos;
 
 import net.gsantner.opoc.util.FileUtils;
-import net.gsantner.opoc.util.ZipUtils;
+import net.gsantner.opoc.util.Callback;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InvalidObjectException;
 import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.locks.ReentrantLock;
 
 import io.github.lonamiwebs.stringlate.classes.Messenger;
+import io.github.lonamiwebs.stringlate.classes.git.GitCloneProgressCallback;
 import io.github.lonamiwebs.stringlate.classes.git.GitHub;
-import io.github.lonamiwebs.stringlate.classes.locales.LocaleString;
+import io.github.lonamiwebs.stringlate.classes.locales.LocaleRegistry;
+import io.github.lonamiwebs.stringlate.classes.resources.CompactResources;
+import io.github.lonamiwebs.stringlate.classes.resources.CrossLocaleIndex;
+import io.github.lonamiwebs.stringlate.classes.resources.ResourceIds;
 import io.github.lonamiwebs.stringlate.classes.resources.Resources;
 import io.github.lonamiwebs.stringlate.classes.resources.ResourcesParser;
 import io.github.lonamiwebs.stringlate.classes.resources.tags.ResTag;
+import io.github.lonamiwebs.stringlate.classes.sources.GitObjectStore;
 import io.github.lonamiwebs.stringlate.classes.sources.SourceSettings;
 import io.github.lonamiwebs.stringlate.interfaces.StringsSource;
 
@@ -42,15 +57,33 @@ public class RepoHandler implements Comparable<RepoHandler> {
     public final File mRoot, mCacheDir;
     private final File mProgressFile;
 
+    // Files which are only written when syncing live in the store shared by every repository
+    private final BlobStore mBlobs;
+    private final BlobStore.Manifest mBlobManifest;
+    private static final String ICON_PATH = "icon";
+
     private final ArrayList<String> mLocales = new ArrayList<>();
 
     public static final String DEFAULT_LOCALE = "default";
 
+    // Other branches of the repository are kept as snapshots under this directory,
+    // each being a repository of its own (with its own translations) inside this one
+    static final String BRANCHES_DIR = "branches";
+    private static final String[] BRANCH_REF_PREFIXES = {"refs/remotes/origin/", "refs/heads/"};
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // Where the indices of the files loaded lazily are kept, under the cache directory
+    private static final String INDEX_DIR = "resources_index";
+
     private final static ReentrantLock syncingLock = new ReentrantLock();
     private final static HashSet<File> rootsInSync = new HashSet<>();
     private StringsSource mSyncingSource;
     private boolean wasCancelled;
 
+    private ResourceIds mResourceIds; // Shared by every locale, see loadCompactResources()
+    private CrossLocaleIndex mCrossLocaleIndex;
+
     //endregion
 
     //region Constructors
@@ -64,6 +97,8 @@ public class RepoHandler implements Comparable<RepoHandler> {
         mSourceSettings = new SourceSettings(mRoot);
         settings.checkUpgradeSettingsToSpecific(mSourceSettings);
         mProgressFile = new File(mRoot, "translation_progress.json");
+        mBlobs = new BlobStore(workDir);
+        mBlobManifest = new BlobStore.Manifest(mRoot);
 
         loadLocales();
     }
@@ -76,6 +111,8 @@ public class RepoHandler implements Comparable<RepoHandler> {
         settings.checkUpgradeSettingsToSpecific(mSourceSettings);
 
         mProgressFile = new File(mRoot, "translation_progress.json");
+        mBlobs = new BlobStore(getWorkDir(mRoot));
+        mBlobManifest = new BlobStore.Manifest(mRoot);
 
         loadLocales();
     }
@@ -85,7 +122,7 @@ public class RepoHandler implements Comparable<RepoHandler> {
     //region Utilities
 
     // Retrieves the File object for the given locale
-    private File getResourcesFile(final String locale) {
+    public File getResourcesFile(final String locale) {
         if (locale == null)
             throw new IllegalArgumentException("locale cannot be null");
         return new File(mRoot, locale + "/strings.xml");
@@ -96,7 +133,59 @@ public class RepoHandler implements Comparable<RepoHandler> {
             throw new IllegalArgumentException("locale cannot be null");
         if (filename == null)
             throw new IllegalArgumentException("filename cannot be null");
-        return new File(mRoot, locale + "/original/" + filename);
+        return getStoredFile(getTranslatedResourcesPath(locale) + filename);
+    }
+
+    private static String getTranslatedResourcesPath(final String locale) {
+        return locale + "/original/";
+    }
+
+    // Repositories synced (or imported) before the blob store existed,
+    // or whose blobs are missing, still have the files under their root
+    private File getStoredFile(final String path) {
+        final String blob = mBlobManifest.get(path);
+        if (blob != null) {
+            final File file = mBlobs.getFile(blob);
+            if (file.isFile())
+                return file;
+        }
+        return new File(mRoot, path);
+    }
+
+    // Returns false if the file could not be stored
+    private boolean storeFile(final String path, final String content) {
+        try {
+            mBlobManifest.put(path, mBlobs.put(path, content));
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // Saves the resources as xml into the store. Returns false if there are none
+    private boolean storeResources(final String path, final Iterable<ResTag> tags) {
+        final File tmpFile = new File(mCacheDir, "tmp_resources_" + getTempName() + ".xml");
+        if (tmpFile.exists() && !tmpFile.delete())
+            return false;
+
+        final Resources resources = Resources.fromFile(tmpFile);
+        for (ResTag rt : tags)
+            resources.addTag(rt);
+
+        try {
+            if (!resources.save())
+                return false;
+
+            mBlobManifest.put(path, mBlobs.put(tmpFile));
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            if (tmpFile.exists() && !tmpFile.delete())
+                tmpFile.deleteOnExit();
+        }
     }
 
     private File getDefaultResourcesFile(final String filename) {
@@ -118,14 +207,14 @@ public class RepoHandler implements Comparable<RepoHandler> {
         return result;
     }
 
-    private File getUniqueTranslatedResourcesFile(String locale) {
+    private String getUniqueTranslatedResourcesName(String locale) {
         if (locale == null)
             throw new IllegalArgumentException("locale cannot be null");
 
-        File result = getTranslatedResourcesFile(locale, "strings.xml");
+        String result = "strings.xml";
         int i = 2;
-        while (result.isFile()) {
-            result = getTranslatedResourcesFile(locale, "strings" + i + ".xml");
+        while (getTranslatedResourcesFile(locale, result).isFile()) {
+            result = "strings" + i + ".xml";
             i++;
         }
 
@@ -134,13 +223,30 @@ public class RepoHandler implements Comparable<RepoHandler> {
 
     // Never returns null
     public File[] getTranslatedResourcesFiles(String locale) {
-        File root = new File(mRoot, locale + "/original");
-        if (root.isDirectory()) {
-            File[] files = root.listFiles();
-            if (files != null)
-                return files;
+        final ArrayList<String> names = getTranslatedResourcesNames(locale);
+        final File[] files = new File[names.size()];
+        for (int i = 0; i < files.length; ++i)
+            files[i] = getTranslatedResourcesFile(locale, names.get(i));
+        return files;
+    }
+
+    // The names of the translated files, either in the blob store or under the root
+    private ArrayList<String> getTranslatedResourcesNames(String locale) {
+        final ArrayList<String> names = mBlobManifest.list(getTranslatedResourcesPath(locale));
+        final File[] files = new File(mRoot, getTranslatedResourcesPath(locale)).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!names.contains(file.getName()))
+                    names.add(file.getName());
+            }
         }
-        return new File[0];
+        return names;
+    }
+
+    private boolean deleteTranslatedResources(String locale) {
+        mBlobManifest.removeAll(getTranslatedResourcesPath(locale));
+        final File dir = new File(mRoot, getTranslatedResourcesPath(locale));
+        return !dir.exists() || FileUtils.deleteRecursive(dir);
     }
 
     // Never returns null
@@ -181,6 +287,7 @@ public class RepoHandler implements Comparable<RepoHandler> {
     // Deletes the repository erasing its existence from Earth. Forever. (Unless added again)
     public boolean delete() {
         boolean ok = FileUtils.deleteRecursive(mRoot);
+        mBlobs.gc();
         Messenger.notifyRepoRemoved(this);
         return ok;
     }
@@ -197,6 +304,23 @@ public class RepoHandler implements Comparable<RepoHandler> {
         return Integer.toHexString(gitUrl.hashCode());
     }
 
+    // Branch snapshots live inside the root of their repository, not in the work directory
+    private static File getWorkDir(final File root) {
+        final File parent = root.getAbsoluteFile().getParentFile();
+        return isBranchDir(root) ? parent.getParentFile().getParentFile() : parent;
+    }
+
+    private static boolean isBranchDir(final File root) {
+        return root.getAbsoluteFile().getParentFile().getName().equals(BRANCHES_DIR);
+    }
+
+    // Unique among every repository and branch snapshot, to name temporary (or cache) files
+    public String getTempName() {
+        return isBranchDir(mRoot) ?
+                mRoot.getParentFile().getParentFile().getName() + "_" + mRoot.getName() :
+                mRoot.getName();
+    }
+
     //endregion
 
     //region Locales
@@ -207,17 +331,12 @@ public class RepoHandler implements Comparable<RepoHandler> {
         mLocales.clear();
         if (mRoot.isDirectory()) {
             for (File localeDir : mRoot.listFiles()) {
-                if (localeDir.isDirectory()) {
+                if (localeDir.isDirectory() && !localeDir.getName().equals(BRANCHES_DIR)) {
                     mLocales.add(localeDir.getName());
                 }
             }
         }
-        Collections.sort(mLocales, new Comparator<String>() {
-            @Override
-            public int compare(String s1, String s2) {
-                return LocaleString.getDisplay(s1).compareTo(LocaleString.getDisplay(s2));
-            }
-        });
+        LocaleRegistry.getInstance().sortByDisplay(mLocales);
     }
 
     public ArrayList<String> getLocales() {
@@ -261,6 +380,15 @@ public class RepoHandler implements Comparable<RepoHandler> {
     public boolean syncResources(final StringsSource source,
                                  final int desiredIconDpi,
                                  final Messenger.OnSyncProgress callback) {
+        return syncResources(source, desiredIconDpi, callback, true);
+    }
+
+    // The blob store is collected after syncing (which scans every repository in the work
+    // directory) unless told not to, e.g. when syncing often with few changes each time
+    public boolean syncResources(final StringsSource source,
+                                 final int desiredIconDpi,
+                                 final Messenger.OnSyncProgress callback,
+                                 final boolean collectGarbage) {
 
         syncingLock.lock();
         if (rootsInSync.contains(mRoot)) {
@@ -276,6 +404,11 @@ public class RepoHandler implements Comparable<RepoHandler> {
         try {
             return doSyncResources(source, desiredIconDpi, callback);
         } finally {
+            // Even if it failed, whatever was stored should be kept track of
+            mBlobManifest.save();
+            if (collectGarbage)
+                mBlobs.gc();
+
             syncingLock.lock();
             rootsInSync.remove(mRoot);
             mSyncingSource = null;
@@ -306,7 +439,7 @@ public class RepoHandler implements Comparable<RepoHandler> {
             mSourceSettings.reset(source.getName());
         }
 
-        final File tmpWorkDir = new File(mCacheDir, "tmp_sync_" + mRoot.getName());
+        final File tmpWorkDir = new File(mCacheDir, "tmp_sync_" + getTempName());
         if (tmpWorkDir.isDirectory())
             if (!FileUtils.deleteRecursive(tmpWorkDir))
                 return false;
@@ -316,79 +449,189 @@ public class RepoHandler implements Comparable<RepoHandler> {
 
         callback.onUpdate(2, (0f / 4f));
 
-        // Delete all the previous default resources since their
-        // names might have changed, been removed, or some new added.
-        settings.clearRemotePaths();
-        for (File f : getDefaultResourcesFiles())
-            if (!f.delete())
-                return false;
+        // Files of the source whose contents didn't change since the last sync are
+        // neither parsed, merged nor saved again. The manifest is only saved once the
+        // sync is over, so that if it fails midway the next one doesn't trust it.
+        final SyncManifest manifest = new SyncManifest(mRoot);
+        if (!manifest.invalidate())
+            return false;
 
-        settings.clearRemoteLocalePaths();
-        for(String locale: source.getLocales())
-            for (File f : getTranslatedResourcesFiles(locale))
-                if (!f.delete())
-                    return false;
+        final int defaultsChanged = syncDefaultResources(source, manifest);
+        if (defaultsChanged < 0)
+            return false;
 
+        callback.onUpdate(2, (1f / 4f));
+
+        final ArrayList<String> changedLocales = new ArrayList<>();
         for (String locale : source.getLocales()) {
             if (locale == null)
                 continue; // Should not happen
 
-            // Load in memory the old saved resources. We need to work
-            // on this file because we're going to be merging changes.
-            Resources resources = loadResources(locale);
+            // If the default resources changed, strings which were cleaned up before (both
+            // from the resources and the original files) may be used again, so no file
+            // can be reused
+            final int changed = syncTranslatedResources(source, locale, manifest, defaultsChanged > 0);
+            if (changed < 0)
+                return false;
+            if (changed > 0)
+                changedLocales.add(locale);
+        }
 
-            // Add new translated tags without overwriting existing ones
-            for (String name : source.getTranslatedResources(locale))
-                for (ResTag rt : source.getTranslatedResource(locale, name))
-                    if (!resources.wasModified(rt.getId()))
-                        resources.addTag(rt);
+        callback.onUpdate(2, (2f / 4f));
 
-            // Save the changes
-            resources.save();
+        callback.onUpdate(2, (3f / 4f));
+
+        // Check out if we have any icon for this repository
+        File icon = source.getIcon();
+        if (icon != null) {
+            // We have an icon to show, save it to the store and its path
+            // (the blob keeps the extension so we know the type of the image)
+            try {
+                mBlobManifest.put(ICON_PATH, mBlobs.put(icon));
+                final File oldIcon = settings.getIconFile();
+                settings.setIconFile(getStoredFile(ICON_PATH));
+                // Older versions copied the icon to the repository root
+                if (oldIcon != null && mRoot.equals(oldIcon.getParentFile()))
+                    if (!oldIcon.delete())
+                        oldIcon.deleteOnExit();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
 
-        callback.onUpdate(2, (1f / 4f));
+        // Clean old unused strings which now don't exist on the default resources files.
+        // Only the new strings can be unused, unless the default resources changed.
+        unusedStringsCleanup(defaultsChanged > 0 ? getLocales() : changedLocales);
+        manifest.save();
+        loadLocales(); // Reload the locales
+        synchronized (this) {
+            mResourceIds = null; // The IDs may have changed
+            mCrossLocaleIndex = null;
+        }
 
-        for (String locale : source.getLocales()) {
-            for (String originalName : source.getTranslatedResources(locale)) {
-                boolean okay;
-                final File resourceFile = getUniqueTranslatedResourcesFile(locale);
-
-                final String xml = source.getTranslatedResourceXml(locale, originalName);
-                if (xml == null) {
-                    // We don't know how the original XML looked like, that's okay
-                    final Resources resources = Resources.fromFile(resourceFile);
-                    for (ResTag rt : source.getTranslatedResource(locale, originalName))
-                        resources.addTag(rt); // Copy the resources to the new local file
-
-                    okay = resources.save();
-                } else {
-                    okay = FileUtils.writeFile(resourceFile, xml);
-                }
+        callback.onUpdate(2, (4f / 4f));
 
-                if (okay) {
-                    // Save the map origin -> unique, since we access it only from the list of
-                    // source locale
-                    String name = new File(originalName).getName();
-                    settings.addRemoteLocalePath(locale, name, resourceFile.getName());
-                } else {
-                    // Something went wrong, either saving, cleaning the XML or it has no strings
-                    // Clean up the ifle we may have made, if it exists, or give up if it fails
-                    if (resourceFile.isFile())
-                        if (!resourceFile.delete())
-                            return false;
+        return true;
+    }
+
+    // Returns how many files of the given locale changed, or -1 on failure
+    private int syncTranslatedResources(final StringsSource source, final String locale,
+                                        final SyncManifest manifest, boolean force) {
+        // The originals outlive a deleted locale (they're in the blob store), but its
+        // translations are gone and must be merged again from every original
+        if (!getResourcesFile(locale).isFile())
+            force = true;
+
+        final HashMap<String, SyncManifest.Entry> old = manifest.getAll(locale);
+        if (old.isEmpty()) {
+            // Nothing is known about the files, and so they can't be reused
+            // (e.g. they were made before the manifest was introduced)
+            if (!deleteTranslatedResources(locale))
+                return -1;
+        }
+
+        final ArrayList<String> changed = new ArrayList<>();
+        final HashMap<String, String> xmls = new HashMap<>();
+        final HashMap<String, String> locals = new HashMap<>(); // source name -> local name
+        for (String originalName : source.getTranslatedResources(locale)) {
+            final String xml = source.getTranslatedResourceXml(locale, originalName);
+            final String hash = SyncManifest.hash(xml);
+            final SyncManifest.Entry entry = old.remove(originalName);
+            if (entry != null) {
+                if (!force && !hash.equals(SyncManifest.NO_HASH) && hash.equals(entry.hash) &&
+                        getTranslatedResourcesFile(locale, entry.local).isFile()) {
+                    locals.put(originalName, entry.local);
+                    continue; // Unchanged, and so is the file made from it
                 }
+                removeTranslatedResources(locale, entry.local);
             }
+            changed.add(originalName);
+            xmls.put(originalName, xml);
+            manifest.remove(locale, originalName);
         }
 
-        callback.onUpdate(2, (2f / 4f));
+        // Whatever is left was removed from the source
+        for (Map.Entry<String, SyncManifest.Entry> entry : old.entrySet()) {
+            removeTranslatedResources(locale, entry.getValue().local);
+            manifest.remove(locale, entry.getKey());
+        }
+
+        if (changed.isEmpty() && old.isEmpty())
+            return 0;
+
+        // Load in memory the old saved resources. We need to work
+        // on this file because we're going to be merging changes.
+        final Resources resources = loadResources(locale);
+
+        // Add new translated tags without overwriting existing ones
+        for (String originalName : changed)
+            for (ResTag rt : source.getTranslatedResource(locale, originalName))
+                if (!resources.wasModified(rt.getId()))
+                    resources.addTag(rt);
 
-        for (String originalName : source.getDefaultResources()) {
+        // Save the changes
+        resources.save();
+
+        for (String originalName : changed) {
+            final boolean okay;
+            final String uniqueName = getUniqueTranslatedResourcesName(locale);
+            final String path = getTranslatedResourcesPath(locale) + uniqueName;
+
+            final String xml = xmls.get(originalName);
+            if (xml == null) {
+                // We don't know how the original XML looked like, that's okay
+                okay = storeResources(path, source.getTranslatedResource(locale, originalName));
+            } else {
+                okay = storeFile(path, xml);
+            }
+
+            // Otherwise something went wrong, either saving or it has no strings,
+            // but nothing was stored so there's nothing to clean up
+            if (okay) {
+                locals.put(originalName, uniqueName);
+                manifest.put(locale, originalName, SyncManifest.hash(xml), uniqueName);
+            }
+        }
+
+        // Save the map origin -> unique, since we access it only from the list of source locale
+        settings.clearRemoteLocalePaths(locale);
+        for (Map.Entry<String, String> local : locals.entrySet())
+            settings.addRemoteLocalePath(locale, new File(local.getKey()).getName(), local.getValue());
+
+        return changed.size() + old.size();
+    }
+
+    // Returns 1 if the default resources changed, 0 if they didn't, or -1 on failure.
+    // They are few, and the order in which they're saved matters (later ones override
+    // earlier ones), so they're all saved again if any of them changed.
+    private int syncDefaultResources(final StringsSource source, final SyncManifest manifest) {
+        final List<String> originalNames = source.getDefaultResources();
+        final String[] xmls = new String[originalNames.size()];
+        boolean changed = manifest.getAll(DEFAULT_LOCALE).size() != xmls.length;
+        for (int i = 0; i < xmls.length; ++i) {
+            xmls[i] = source.getDefaultResourceXml(originalNames.get(i));
+            final SyncManifest.Entry entry = manifest.get(DEFAULT_LOCALE, originalNames.get(i));
+            if (xmls[i] == null || entry == null || !entry.hash.equals(SyncManifest.hash(xmls[i])) ||
+                    !getDefaultResourcesFile(entry.local).isFile())
+                changed = true;
+        }
+        if (!changed)
+            return 0;
+
+        // Delete all the previous default resources since their
+        // names might have changed, been removed, or some new added.
+        settings.clearRemotePaths();
+        manifest.clear(DEFAULT_LOCALE);
+        for (File f : getDefaultResourcesFiles())
+            if (!f.delete())
+                return -1;
+
+        for (int i = 0; i < xmls.length; ++i) {
+            final String originalName = originalNames.get(i);
             boolean okay;
             final File resourceFile = getUniqueDefaultResourcesFile();
 
-            final String xml = source.getDefaultResourceXml(originalName);
-            if (xml == null) {
+            if (xmls[i] == null) {
                 // We don't know how the original XML looked like, that's okay
                 final Resources resources = Resources.fromFile(resourceFile);
                 for (ResTag rt : source.getDefaultResource(originalName))
@@ -397,48 +640,43 @@ public class RepoHandler implements Comparable<RepoHandler> {
                 okay = resources.save();
             } else {
                 // We have the original XML available, so clean it up and preserve its structure
-                okay = FileUtils.writeFile(resourceFile, xml);
+                okay = FileUtils.writeFile(resourceFile, xmls[i]);
             }
 
             if (okay) {
                 // Save the map unique -> original since this is a valid file
                 settings.addRemotePath(resourceFile.getName(), originalName);
+                manifest.put(DEFAULT_LOCALE, originalName,
+                        SyncManifest.hash(xmls[i]), resourceFile.getName());
             } else {
                 // Something went wrong, either saving, cleaning the XML, or it has no strings
                 // Clean up the file we may have made, if it exists, or give up if it fails
                 if (resourceFile.isFile())
                     if (!resourceFile.delete())
-                        return false;
+                        return -1;
             }
         }
+        return 1;
+    }
 
-        callback.onUpdate(2, (3f / 4f));
-
-        // Check out if we have any icon for this repository
-        File icon = source.getIcon();
-        if (icon != null) {
-            // We have an icon to show, copyFile it to our repository root
-            // and save it's path (we must keep track of the used extension)
-            File newIcon = new File(mRoot, icon.getName());
-            if (!newIcon.isFile() || newIcon.delete()) {
-                if (FileUtils.copyFile(icon, newIcon))
-                    settings.setIconFile(newIcon);
-            }
+    private void removeTranslatedResources(final String locale, final String name) {
+        final String path = getTranslatedResourcesPath(locale) + name;
+        if (mBlobManifest.get(path) != null) {
+            mBlobManifest.remove(path);
+        } else {
+            final File file = new File(mRoot, path);
+            if (file.exists() && !file.delete())
+                file.deleteOnExit();
         }
-
-        // Clean old unused strings which now don't exist on the default resources files
-        unusedStringsCleanup();
-        loadLocales(); // Reload the locales
-
-        callback.onUpdate(2, (4f / 4f));
-
-        return true;
     }
 
-    private void unusedStringsCleanup() {
+    private void unusedStringsCleanup(final List<String> locales) {
+        if (locales.isEmpty())
+            return;
+
         final Resources defaultResources = loadDefaultResources();
 
-        for (String locale : getLocales()) {
+        for (String locale : locales) {
             if (locale.equals(DEFAULT_LOCALE))
                 continue;
 
@@ -457,11 +695,208 @@ public class RepoHandler implements Comparable<RepoHandler> {
 
             resources.save();
 
-            // Also clean original files
-            for(File original : getTranslatedResourcesFiles(locale)) {
-                ResourcesParser.cleanXml(original, defaultResources);
+            // Also clean original files (as new blobs, since the old ones may be shared)
+            for (String name : getTranslatedResourcesNames(locale)) {
+                final String xml = ResourcesParser.cleanXml(
+                        FileUtils.readTextFile(getTranslatedResourcesFile(locale, name)),
+                        defaultResources);
+                if (xml != null)
+                    storeFile(getTranslatedResourcesPath(locale) + name, xml);
+            }
+        }
+    }
+
+    //endregion
+
+    //region Branches
+
+    // Returns the snapshot of the given branch, which is synced and translated on its own
+    public RepoHandler getBranch(final String branch) {
+        final File root = new File(new File(mRoot, BRANCHES_DIR), getBranchDirName(branch));
+        final RepoHandler result = new RepoHandler(root, mCacheDir);
+        if (result.settings.getSource().isEmpty())
+            result.settings.setSource(settings.getSource());
+        return result;
+    }
+
+    // The branches which have a snapshot. Never returns null
+    public ArrayList<String> getBranches() {
+        final ArrayList<String> result = new ArrayList<>();
+        final File[] dirs = new File(mRoot, BRANCHES_DIR).listFiles();
+        if (dirs != null) {
+            for (File dir : dirs)
+                if (isValidRepoDir(dir))
+                    result.add(getBranchFromDirName(dir.getName()));
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    // Returns null if this is not the snapshot of a branch
+    public String getBranchName() {
+        return isBranchDir(mRoot) ? getBranchFromDirName(mRoot.getName()) : null;
+    }
+
+    public boolean deleteBranch(final String branch) {
+        final boolean ok = FileUtils.deleteRecursive(
+                new File(new File(mRoot, BRANCHES_DIR), getBranchDirName(branch)));
+        mBlobs.gc();
+        return ok;
+    }
+
+    // Branches may be given as "name" or "refs/remotes/origin/name", and the name may
+    // contain slashes (e.g. "release/1.0"), so every character which isn't safe in a file
+    // name is escaped as %XX (its UTF-8 bytes), which keeps names unique and reversible
+    private static String getBranchDirName(final String branch) {
+        String name = branch;
+        for (String prefix : BRANCH_REF_PREFIXES) {
+            if (name.startsWith(prefix)) {
+                name = name.substring(prefix.length());
+                break;
+            }
+        }
+        if (name.isEmpty())
+            throw new IllegalArgumentException("Invalid branch name: " + branch);
+
+        final StringBuilder sb = new StringBuilder(name.length());
+        for (byte b : name.getBytes(UTF8)) {
+            final char c = (char) (b & 0xff);
+            // A leading dot is escaped too, so the name is never "." or ".." (or hidden)
+            if (c < 0x80 && (Character.isLetterOrDigit(c) || c == '_' || c == '-' ||
+                    (c == '.' && sb.length() != 0)))
+                sb.append(c);
+            else
+                sb.append(String.format(Locale.ENGLISH, "%%%02X", b & 0xff));
+        }
+        return sb.toString();
+    }
+
+    private static String getBranchFromDirName(final String dirName) {
+        if (dirName.indexOf('%') == -1)
+            return dirName;
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(dirName.length());
+        for (int i = 0; i < dirName.length(); ++i) {
+            final char c = dirName.charAt(i);
+            if (c == '%' && i + 2 < dirName.length()) {
+                out.write(Integer.parseInt(dirName.substring(i + 1, i + 3), 16));
+                i += 2;
+            } else {
+                out.write(c);
+            }
+        }
+        return new String(out.toByteArray(), UTF8);
+    }
+
+    // Syncs the snapshot of every branch from its source (keyed by branch) at the same
+    // time. The sources may share whatever they fetched (e.g. the sources of the same
+    // GitObjectStore), and the files which didn't change across branches are shared by
+    // the blob store. Returns the branches which failed to sync, which is empty on success.
+    public ArrayList<String> syncBranches(final Map<String, StringsSource> sources,
+                                          final int desiredIconDpi,
+                                          final Messenger.OnSyncProgress callback) {
+        final ArrayList<String> branches = new ArrayList<>(sources.keySet());
+        final BranchesProgress progress = new BranchesProgress(branches.size(), callback);
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(branches.size(), Runtime.getRuntime().availableProcessors())));
+
+        final ArrayList<Future<Boolean>> futures = new ArrayList<>(branches.size());
+        for (int i = 0; i < branches.size(); ++i) {
+            final RepoHandler snapshot = getBranch(branches.get(i));
+            final StringsSource source = sources.get(branches.get(i));
+            final Messenger.OnSyncProgress branchCallback = progress.forBranch(i);
+            futures.add(executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return snapshot.syncResources(source, desiredIconDpi, branchCallback);
+                }
+            }));
+        }
+        executor.shutdown();
+
+        final ArrayList<String> failed = new ArrayList<>();
+        for (int i = 0; i < branches.size(); ++i) {
+            try {
+                if (!futures.get(i).get())
+                    failed.add(branches.get(i));
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+                failed.add(branches.get(i));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                executor.shutdownNow();
+                failed.addAll(branches.subList(i, branches.size()));
+                break;
             }
         }
+        return failed;
+    }
+
+    // Fetches the repository at gitUrl only once, and syncs the given branches from it
+    // with syncBranches(). Should be called from a background thread. Returns the
+    // branches which failed to sync (all of them if it couldn't be fetched).
+    public ArrayList<String> syncBranches(final String gitUrl, final List<String> branches,
+                                          final int desiredIconDpi,
+                                          final Messenger.OnSyncProgress callback) {
+        final GitObjectStore store = new GitObjectStore(gitUrl);
+        try {
+            final File dir = new File(mCacheDir, "tmp_branches_" + getTempName());
+            if (!store.fetch(dir, new GitCloneProgressCallback(callback)))
+                return new ArrayList<>(branches);
+
+            final HashMap<String, StringsSource> sources = new HashMap<>();
+            for (String branch : branches)
+                sources.put(branch, store.getSource(branch));
+
+            return syncBranches(sources, desiredIconDpi, callback);
+        } finally {
+            store.close();
+        }
+    }
+
+    // Reports the progress of the branches being synced as if it were a single sync,
+    // by how far the branch which is the most behind is
+    private static class BranchesProgress {
+        private final int[] mSteps;
+        private final float[] mProgress;
+        private final Messenger.OnSyncProgress mCallback;
+
+        BranchesProgress(final int count, final Messenger.OnSyncProgress callback) {
+            mSteps = new int[count];
+            mProgress = new float[count];
+            mCallback = callback;
+        }
+
+        Messenger.OnSyncProgress forBranch(final int index) {
+            return new Messenger.OnSyncProgress() {
+                @Override
+                public void onUpdate(int step, float progress) {
+                    update(index, step, progress);
+                }
+            };
+        }
+
+        private void update(final int index, final int step, final float progress) {
+            final int minStep;
+            float sum = 0f;
+            int count = 0;
+            synchronized (this) {
+                mSteps[index] = step;
+                mProgress[index] = progress;
+
+                int min = Integer.MAX_VALUE;
+                for (int s : mSteps)
+                    min = Math.min(min, s);
+                minStep = min;
+                for (int i = 0; i < mSteps.length; ++i) {
+                    if (mSteps[i] == minStep) {
+                        sum += mProgress[i];
+                        count++;
+                    }
+                }
+            }
+            mCallback.onUpdate(minStep, sum / count);
+        }
     }
 
     //endregion
@@ -469,20 +904,60 @@ public class RepoHandler implements Comparable<RepoHandler> {
     //region Loading resources
 
     public Resources loadDefaultResources() {
-        // Mix up all the resource files into one
-        Resources resources = Resources.empty();
-        for (File f : getDefaultResourcesFiles()) {
-            for (ResTag rt : Resources.fromFile(f)) {
-                resources.addTag(rt);
+        final File[] files = getSortedDefaultResourcesFiles();
+        return files.length == 0 ? Resources.empty() : Resources.fromFiles(files);
+    }
+
+    // Same as loadDefaultResources(), but the content of the strings is only read when
+    // needed, which makes opening huge projects much faster. The index of each file
+    // is kept in the cache directory, since it can be rebuilt at any time
+    public Resources loadLazyDefaultResources() {
+        final File[] files = getSortedDefaultResourcesFiles();
+        return files.length == 0 ?
+                Resources.empty() : Resources.fromFilesLazy(files, new File(mCacheDir, INDEX_DIR));
+    }
+
+    private File[] getSortedDefaultResourcesFiles() {
+        // Mix up all the resource files into one. Sort them as they were created
+        // by getUniqueDefaultResourcesFile() (strings.xml, strings2.xml, …,
+        // strings10.xml) so that the later ones override duplicated IDs.
+        final File[] files = getDefaultResourcesFiles();
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                final String n1 = f1.getName();
+                final String n2 = f2.getName();
+                return n1.length() != n2.length() ?
+                        n1.length() - n2.length() : n1.compareTo(n2);
             }
-        }
-        return resources;
+        });
+        return files;
     }
 
     public Resources loadResources(final String locale) {
         return Resources.fromFile(getResourcesFile(locale));
     }
 
+    // Loads the locale as read-only content indexed by the ordinals of getResourceIds().
+    // Meant to be used when many locales need to be loaded at once, since the IDs are
+    // shared and only the content of each locale is kept in memory.
+    public CompactResources loadCompactResources(final String locale) {
+        return CompactResources.fromResources(getResourceIds(), loadResources(locale));
+    }
+
+    public synchronized ResourceIds getResourceIds() {
+        if (mResourceIds == null)
+            mResourceIds = ResourceIds.fromResources(loadDefaultResources());
+        return mResourceIds;
+    }
+
+    // Used to look up the translations of a string on every locale at once
+    public synchronized CrossLocaleIndex getCrossLocaleIndex() {
+        if (mCrossLocaleIndex == null)
+            mCrossLocaleIndex = new CrossLocaleIndex(this);
+        return mCrossLocaleIndex;
+    }
+
     // Returns "" if the template wasn't applied successfully (never null)
     // TODO Handle the above case more gracefully, display a toast error maybe
     public String applyTemplate(final File template, final File oldFile, final String locale) {
@@ -738,47 +1213,91 @@ public class RepoHandler implements Comparable<RepoHandler> {
 
     //region Importing and exporting
 
-    public void importZip(InputStream inputStream) {
+    public boolean importZip(InputStream inputStream) {
+        // The archive is validated (and extracted) through its central directory,
+        // which needs random access, so copy it first if it's only a stream
+        final File zipFile = new File(mCacheDir, "tmp_import.zip");
+        FileOutputStream output = null;
+        try {
+            output = new FileOutputStream(zipFile);
+            final byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1)
+                output.write(buffer, 0, read);
+
+            output.close();
+            output = null;
+            return importZip(zipFile, null);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException ignored) {
+                }
+            }
+            if (zipFile.exists() && !zipFile.delete())
+                zipFile.deleteOnExit();
+        }
+    }
+
+    // Replaces this repository with the one in the given archive. Nothing is touched
+    // unless the archive is a valid, full archive and it could be extracted completely,
+    // and the repository is then swapped by renaming its directory (or left as it was
+    // if that fails).
+    public boolean importZip(File zipFile, Callback.a1<Float> progress) {
+        final File dir = getTempImportDir();
+        final File backupDir = getTempImportBackupDir();
         try {
-            // Get temporary import directory and delete any previous directory
-            File dir = getTempImportDir();
-            File backupDir = getTempImportBackupDir();
+            // Delete any previous temporary directory
             if (!FileUtils.deleteRecursive(dir) || !FileUtils.deleteRecursive(backupDir))
                 throw new IOException("Could not delete old temporary directories.");
+            if (!dir.mkdirs())
+                throw new IOException("Could not create the temporary directory.");
 
-            // Unzip the given input stream
-            ZipUtils.unzip(inputStream, dir, false, null, -1f);
-
-            // Ensure it's a valid repository (only one parent directory, containing settings)
-            final File[] unzippedFiles = dir.listFiles();
-            if (unzippedFiles == null || unzippedFiles.length != 1)
-                throw new IOException("There should only be 1 unzipped file (the repository's root).");
+            final File root = RepoArchive.importZip(zipFile, dir, progress);
 
-            final File root = unzippedFiles[0];
-            if (!RepoSettings.exists(root))
-                throw new IOException("The specified .zip file does not seem valid.");
-
-            // Nice, unzipping worked. Now try moving the current repository
-            // to yet another temporary location, because we don't want to lose
-            // it in case something goes wrong and we need to revert…
-            if (!mRoot.renameTo(backupDir))
+            // Nice, extracting worked. Now move the current repository to yet another
+            // temporary location, because we don't want to lose it if we need to revert
+            if (mRoot.exists() && !mRoot.renameTo(backupDir))
                 throw new IOException("Could not move the current repository to its backup location.");
 
             if (!root.renameTo(mRoot)) {
                 // Try reverting the state, hopefully no data was lost
-                String extra = backupDir.renameTo(mRoot) ? "" : " Failed to recover its previous state.";
+                String extra = !backupDir.exists() || backupDir.renameTo(mRoot)
+                        ? "" : " Failed to recover its previous state.";
                 throw new IOException("Could not move the temporary repository to its new location." + extra);
             }
 
+            FileUtils.deleteRecursive(backupDir);
+            mBlobManifest.reload();
             Messenger.notifyRepoAdded(this);
+            return true;
         } catch (IOException e) {
             e.printStackTrace();
+            return false;
+        } finally {
+            FileUtils.deleteRecursive(dir);
         }
     }
 
     public void exportZip(OutputStream output) {
         try {
-            ZipUtils.zipFolder(mRoot, output);
+            // The files in the blob store are exported under their path, as any other
+            final HashMap<String, File> stored = new HashMap<>();
+            for (String path : mBlobManifest.getAll().keySet())
+                stored.put(path, getStoredFile(path));
+
+            for (String branch : getBranches()) {
+                final RepoHandler snapshot = getBranch(branch);
+                final String prefix = BRANCHES_DIR + "/" + snapshot.mRoot.getName() + "/";
+                for (String path : snapshot.mBlobManifest.getAll().keySet())
+                    stored.put(prefix + path, snapshot.getStoredFile(path));
+            }
+
+            RepoArchive.exportZip(mRoot, stored, output);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -3,6 +3,9 @@ package io.github.lonamiwebs.stringlate.classes.repos;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import io.github.lonamiwebs.stringlate.classes.resources.Resources;
+import io.github.lonamiwebs.stringlate.classes.resources.tags.ResTag;
+
 public class RepoProgress {
     public int stringsCount;
     public int translatedCount;
@@ -19,6 +22,27 @@ public class RepoProgress {
         this.totalChars = totalChars;
     }
 
+    // Keeps track of the translated strings count and the characters of the
+    // original strings + those same characters if a translation is available.
+    // This will be used to make a weighted progress (if you translated only
+    // long strings, then this will be closer to 100% than if you translated small ones).
+    public static RepoProgress calculate(final Resources defaultResources,
+                                         final Resources localeResources) {
+        final RepoProgress progress = new RepoProgress();
+        progress.stringsCount = defaultResources.count();
+
+        int chars;
+        for (ResTag rs : defaultResources) {
+            chars = rs.getContentLength();
+            progress.totalChars += chars;
+            if (localeResources.contains(rs.getId())) {
+                progress.translatedCount += 1;
+                progress.currentChars += chars;
+            }
+        }
+        return progress;
+    }
+
     JSONObject toJson() throws JSONException {
         JSONObject json = new JSONObject();
         json.put("stringsCount", stringsCount);
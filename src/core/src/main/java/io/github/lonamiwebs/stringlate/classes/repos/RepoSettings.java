@@ -16,7 +16,7 @@ import io.github.lonamiwebs.stringlate.classes.sources.SourceSettings;
 // We can't quite save the SharedPreferences in a custom path so… use JSON (easier than XML)
 public class RepoSettings {
 
-    private static final String FILENAME = "settings.json";
+    static final String FILENAME = "settings.json";
     private final File mSettingsFile;
     private JSONObject mSettings;
 
@@ -253,6 +253,12 @@ public class RepoSettings {
         mSettings.remove(KEY_REMOTE_LOCALE_PATHS);
     }
 
+    public void clearRemoteLocalePaths(String locale) {
+        JSONObject json = mSettings.optJSONObject(KEY_REMOTE_LOCALE_PATHS);
+        if (json != null)
+            json.remove(locale);
+    }
+
     public void clearRemotePaths() {
         mSettings.remove(KEY_REMOTE_PATHS);
     }
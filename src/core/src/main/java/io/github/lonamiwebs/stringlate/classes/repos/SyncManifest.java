@@ -0,0 +1,145 @@
+package io.github.lonamiwebs.stringlate.classes.repos;
+
+import net.gsantner.opoc.util.FileUtils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+// Remembers which file of the source produced which local file, and the hash of its
+// contents back then, so that syncing only needs to process the files which changed.
+//
+// Layout: {locale: {source name: {"hash": hash, "local": local name}}}
+class SyncManifest {
+
+    //region Members
+
+    private static final String FILENAME = "sync_manifest.json";
+    private static final String KEY_HASH = "hash";
+    private static final String KEY_LOCAL = "local";
+
+    // Used for files whose contents are unknown, so they never look unchanged
+    static final String NO_HASH = "";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File mFile;
+    private final HashMap<String, HashMap<String, Entry>> mEntries = new HashMap<>();
+
+    static class Entry {
+        final String hash;
+        final String local;
+
+        Entry(final String hash, final String local) {
+            this.hash = hash;
+            this.local = local;
+        }
+    }
+
+    //endregion
+
+    //region Constructor
+
+    SyncManifest(final File repoDir) {
+        mFile = new File(repoDir, FILENAME);
+        if (!mFile.isFile())
+            return;
+
+        try {
+            final JSONObject json = new JSONObject(FileUtils.readTextFile(mFile));
+            final Iterator<String> locales = json.keys();
+            while (locales.hasNext()) {
+                final String locale = locales.next();
+                final JSONObject files = json.getJSONObject(locale);
+                final Iterator<String> names = files.keys();
+                while (names.hasNext()) {
+                    final String name = names.next();
+                    final JSONObject entry = files.getJSONObject(name);
+                    put(locale, name, entry.getString(KEY_HASH), entry.getString(KEY_LOCAL));
+                }
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+            mEntries.clear(); // Better to sync everything than to trust half of it
+        }
+    }
+
+    //endregion
+
+    //region Entries
+
+    Entry get(final String locale, final String name) {
+        final HashMap<String, Entry> files = mEntries.get(locale);
+        return files == null ? null : files.get(name);
+    }
+
+    // Never returns null. The returned map is a copy and can be modified
+    HashMap<String, Entry> getAll(final String locale) {
+        final HashMap<String, Entry> files = mEntries.get(locale);
+        return files == null ? new HashMap<String, Entry>() : new HashMap<>(files);
+    }
+
+    void put(final String locale, final String name, final String hash, final String local) {
+        HashMap<String, Entry> files = mEntries.get(locale);
+        if (files == null) {
+            files = new HashMap<>();
+            mEntries.put(locale, files);
+        }
+        files.put(name, new Entry(hash, local));
+    }
+
+    void remove(final String locale, final String name) {
+        final HashMap<String, Entry> files = mEntries.get(locale);
+        if (files != null)
+            files.remove(name);
+    }
+
+    void clear(final String locale) {
+        mEntries.remove(locale);
+    }
+
+    //endregion
+
+    //region Saving
+
+    // Deletes the saved manifest (but keeps it in memory), so that if the sync
+    // fails after changing some files, the next one doesn't trust it anymore
+    boolean invalidate() {
+        return !mFile.exists() || mFile.delete();
+    }
+
+    boolean save() {
+        try {
+            final JSONObject json = new JSONObject();
+            for (Map.Entry<String, HashMap<String, Entry>> locale : mEntries.entrySet()) {
+                final JSONObject files = new JSONObject();
+                for (Map.Entry<String, Entry> file : locale.getValue().entrySet()) {
+                    files.put(file.getKey(), new JSONObject()
+                            .put(KEY_HASH, file.getValue().hash)
+                            .put(KEY_LOCAL, file.getValue().local));
+                }
+                json.put(locale.getKey(), files);
+            }
+            return FileUtils.writeFile(mFile, json.toString());
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    //endregion
+
+    //region Utilities
+
+    // The same hash the blob store would use for this content
+    static String hash(final String content) {
+        return content == null ? NO_HASH : BlobStore.hash(content.getBytes(UTF8));
+    }
+
+    //endregion
+}
@@ -0,0 +1,252 @@
+package io.github.lonamiwebs.stringlate.classes.resources;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import io.github.lonamiwebs.stringlate.classes.ListenerSet;
+
+// Saves modified Resources in the background, so that they don't need to be saved
+// (which writes the whole file) on the thread modifying them. Every change postpones
+// the save until no more changes are made for a while, so a burst of changes (e.g. typing)
+// results in a single write. To limit how much can be lost, a save is never postponed
+// longer than the maximum delay since the first change which wasn't saved yet.
+public class Autosaver {
+
+    //region Members
+
+    public interface OnSavedListener {
+        // Called after every save, ok being false if the resources couldn't be saved
+        // (and they will be saved again on the next flush() or saveNow())
+        void onSaved(Resources resources, boolean ok);
+    }
+
+    private final long mIdleMs;
+    private final long mMaxPostponeMs;
+
+    // Single thread, so saves never run at the same time and run in order
+    private final ScheduledExecutorService mExecutor;
+
+    // Resources with unsaved changes, and when their first unsaved change was made
+    private final LinkedHashMap<Resources, Long> mDirty = new LinkedHashMap<>();
+    private ScheduledFuture<?> mScheduled;
+    private long mScheduledAt;
+
+    private OnSavedListener mListener;
+    private Executor mListenerExecutor = ListenerSet.DIRECT;
+
+    // Metrics, in milliseconds
+    private int mSaveCount;
+    private int mFailedCount;
+    private long mLastWriteMs;
+    private long mMaxWriteMs;
+    private long mTotalWriteMs;
+    private long mLastUnsavedMs;
+    private long mMaxUnsavedMs;
+
+    //endregion
+
+    //region Constructor
+
+    public Autosaver(final long idleMs, final long maxPostponeMs) {
+        mIdleMs = idleMs;
+        mMaxPostponeMs = Math.max(idleMs, maxPostponeMs);
+        mExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "Autosaver");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public synchronized void setOnSavedListener(final OnSavedListener listener,
+                                                final Executor executor) {
+        mListener = listener;
+        mListenerExecutor = executor == null ? ListenerSet.DIRECT : executor;
+    }
+
+    //endregion
+
+    //region Scheduling
+
+    // Should be called after every change made to the resources
+    public synchronized void changed(final Resources resources) {
+        final long now = System.currentTimeMillis();
+        Long firstChange = mDirty.get(resources);
+        if (firstChange == null) {
+            firstChange = now;
+            mDirty.put(resources, firstChange);
+        }
+
+        // Never postpone the save past the maximum delay of the oldest change
+        long at = now + mIdleMs;
+        for (long first : mDirty.values())
+            at = Math.min(at, first + mMaxPostponeMs);
+
+        schedule(at);
+    }
+
+    // Saves the pending changes as soon as possible, without waiting for them
+    public synchronized void saveNow() {
+        if (!mDirty.isEmpty())
+            schedule(System.currentTimeMillis());
+    }
+
+    // Saves the pending changes now and waits up to the given time for them to be saved.
+    // Returns true if they were all saved (or there were none), and false if any failed
+    // or they were not saved in time (in which case they will still be saved eventually)
+    public boolean flush(final long timeoutMs) {
+        final Future<Boolean> future;
+        synchronized (this) {
+            if (mScheduled != null) {
+                mScheduled.cancel(false);
+                mScheduled = null;
+            }
+            // Also submitted when nothing is pending, to wait for a save in progress
+            future = mExecutor.submit(mSave);
+        }
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+            return false;
+        } catch (TimeoutException e) {
+            return false;
+        }
+    }
+
+    // Forgets about the pending changes of these resources without saving them
+    public synchronized void discard(final Resources resources) {
+        mDirty.remove(resources);
+    }
+
+    // Pending saves still run, but no more changes should be reported after this
+    public void shutdown() {
+        mExecutor.shutdown();
+    }
+
+    private void schedule(final long at) {
+        if (mScheduled != null) {
+            if (mScheduledAt == at)
+                return;
+            mScheduled.cancel(false);
+        }
+        mScheduledAt = at;
+        mScheduled = mExecutor.schedule(mSave,
+                Math.max(0, at - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    //endregion
+
+    //region Saving
+
+    private final Callable<Boolean> mSave = new Callable<Boolean>() {
+        @Override
+        public Boolean call() {
+            final ArrayList<Map.Entry<Resources, Long>> pending;
+            synchronized (Autosaver.this) {
+                pending = new ArrayList<>(mDirty.entrySet());
+                mDirty.clear();
+                mScheduled = null;
+            }
+
+            boolean allOk = true;
+            for (Map.Entry<Resources, Long> entry : pending) {
+                final Resources resources = entry.getKey();
+                final long start = System.currentTimeMillis();
+                final boolean ok = resources.save();
+                final long end = System.currentTimeMillis();
+
+                final OnSavedListener listener;
+                final Executor executor;
+                synchronized (Autosaver.this) {
+                    if (ok) {
+                        record(end - start, end - entry.getValue());
+                    } else {
+                        // Keep them so they're saved again next time (but not retry now)
+                        mFailedCount++;
+                        if (!mDirty.containsKey(resources))
+                            mDirty.put(resources, entry.getValue());
+                    }
+                    listener = mListener;
+                    executor = mListenerExecutor;
+                }
+                allOk &= ok;
+
+                if (listener != null) {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onSaved(resources, ok);
+                        }
+                    });
+                }
+            }
+            return allOk;
+        }
+    };
+
+    //endregion
+
+    //region Metrics
+
+    private void record(final long writeMs, final long unsavedMs) {
+        mSaveCount++;
+        mLastWriteMs = writeMs;
+        mMaxWriteMs = Math.max(mMaxWriteMs, writeMs);
+        mTotalWriteMs += writeMs;
+        mLastUnsavedMs = unsavedMs;
+        mMaxUnsavedMs = Math.max(mMaxUnsavedMs, unsavedMs);
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(mSaveCount, mFailedCount, mLastWriteMs, mMaxWriteMs,
+                mSaveCount == 0 ? 0 : mTotalWriteMs / mSaveCount, mLastUnsavedMs, mMaxUnsavedMs);
+    }
+
+    // How long saving took (writeMs) and how long changes went unsaved (unsavedMs)
+    public static class Stats {
+        public final int saveCount;
+        public final int failedCount;
+        public final long lastWriteMs;
+        public final long maxWriteMs;
+        public final long averageWriteMs;
+        public final long lastUnsavedMs;
+        public final long maxUnsavedMs;
+
+        Stats(int saveCount, int failedCount, long lastWriteMs, long maxWriteMs,
+              long averageWriteMs, long lastUnsavedMs, long maxUnsavedMs) {
+            this.saveCount = saveCount;
+            this.failedCount = failedCount;
+            this.lastWriteMs = lastWriteMs;
+            this.maxWriteMs = maxWriteMs;
+            this.averageWriteMs = averageWriteMs;
+            this.lastUnsavedMs = lastUnsavedMs;
+            this.maxUnsavedMs = maxUnsavedMs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d saves (%d failed), write %d ms (avg %d, max %d), " +
+                            "unsaved for %d ms (max %d)", saveCount, failedCount,
+                    lastWriteMs, averageWriteMs, maxWriteMs, lastUnsavedMs, maxUnsavedMs);
+        }
+    }
+
+    //endregion
+}
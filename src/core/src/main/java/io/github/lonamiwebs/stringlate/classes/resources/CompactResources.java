@@ -0,0 +1,95 @@
+package io.github.lonamiwebs.stringlate.classes.resources;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import io.github.lonamiwebs.stringlate.classes.resources.tags.ResTag;
+
+// Read-only view of the strings of a locale, stored as arrays indexed by the
+// ordinals of a ResourceIds shared between all the locales of a repository.
+// This is meant for screens that need many locales loaded at once, since each
+// one only costs its content instead of the IDs, maps and ResTag objects.
+public class CompactResources {
+
+    //region Members
+
+    private final ResourceIds mIds;
+    private String[] mContents; // null if there's no translation for the ordinal
+    private final BitSet mModified;
+    private int mCount;
+
+    //endregion
+
+    //region Constructors
+
+    private CompactResources(final ResourceIds ids, final int capacity) {
+        mIds = ids;
+        mContents = new String[capacity];
+        mModified = new BitSet(capacity);
+    }
+
+    // Used to restore the contents persisted by CrossLocaleIndex
+    CompactResources(final ResourceIds ids, final String[] contents) {
+        this(ids, 0);
+        mContents = contents;
+        for (String content : contents)
+            if (content != null)
+                mCount++;
+    }
+
+    // IDs not present on the dictionary yet will be added to it
+    public static CompactResources fromResources(final ResourceIds ids, final Resources resources) {
+        final CompactResources result = new CompactResources(ids, ids.size());
+        for (ResTag rt : resources) {
+            final int ordinal = ids.add(rt.getId());
+            if (ordinal >= result.mContents.length)
+                result.mContents = Arrays.copyOf(result.mContents, ids.size());
+
+            if (result.mContents[ordinal] == null)
+                result.mCount++;
+
+            result.mContents[ordinal] = rt.getContent();
+            if (rt.wasModified())
+                result.mModified.set(ordinal);
+        }
+        return result;
+    }
+
+    //endregion
+
+    //region Getting content
+
+    public ResourceIds getIds() {
+        return mIds;
+    }
+
+    public int count() {
+        return mCount;
+    }
+
+    public boolean contains(final int ordinal) {
+        return getContent(ordinal) != null;
+    }
+
+    // Returns null if there is no content for the given ordinal
+    public String getContent(final int ordinal) {
+        return ordinal >= 0 && ordinal < mContents.length ? mContents[ordinal] : null;
+    }
+
+    // Never returns null, similar to Resources.getContent()
+    public String getContent(final String resourceId) {
+        final String content = getContent(mIds.ordinal(resourceId));
+        return content == null ? "" : content;
+    }
+
+    public boolean wasModified(final int ordinal) {
+        return ordinal >= 0 && mModified.get(ordinal);
+    }
+
+    // Used to persist the contents by CrossLocaleIndex
+    String[] getContents() {
+        return mContents;
+    }
+
+    //endregion
+}
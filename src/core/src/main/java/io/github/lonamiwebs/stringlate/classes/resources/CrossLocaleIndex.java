@@ -0,0 +1,201 @@
+package io.github.lonamiwebs.stringlate.classes.resources;
+
+import net.gsantner.opoc.util.FileUtils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.github.lonamiwebs.stringlate.classes.repos.RepoHandler;
+
+// Keeps the translations of every locale of a repository in memory (and on disk),
+// so that all the translations for a given string can be looked up at once without
+// parsing every locale file again. A locale is only reloaded when its file changes.
+public class CrossLocaleIndex {
+
+    //region Members
+
+    private final RepoHandler mRepo;
+    private final File mIndexFile;
+
+    // A file modified this recently may change again without its stamp changing (the
+    // modification time isn't precise enough), so its entry is never trusted to be current
+    private static final long RACY_MS = 3000;
+    private static final long RACY_STAMP = -1;
+
+    private ResourceIds mIds;
+    private final HashMap<String, Entry> mEntries = new HashMap<>();
+
+    // Invalidated without waiting for a (possibly slow) refresh in progress
+    private final Set<String> mInvalidated =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private static class Entry {
+        final long stamp;
+        final CompactResources resources;
+
+        Entry(final long stamp, final CompactResources resources) {
+            this.stamp = stamp;
+            this.resources = resources;
+        }
+    }
+
+    //endregion
+
+    //region Constructor
+
+    public CrossLocaleIndex(final RepoHandler repo) {
+        mRepo = repo;
+        mIndexFile = new File(repo.mCacheDir, "cross_locale_index_" + repo.getTempName() + ".json");
+        load();
+    }
+
+    //endregion
+
+    //region Querying
+
+    // Returns the non-empty translations for the given ID as (locale, content),
+    // in the same order as the repository locales. Never returns null.
+    public synchronized LinkedHashMap<String, String> getTranslations(final String resourceId,
+                                                                       final String excludeLocale) {
+        refresh(excludeLocale);
+        final LinkedHashMap<String, String> result = new LinkedHashMap<>();
+        final int ordinal = mIds.ordinal(resourceId);
+        if (ordinal < 0)
+            return result;
+
+        for (String locale : mRepo.getLocales()) {
+            if (locale.equals(excludeLocale))
+                continue;
+
+            final Entry entry = mEntries.get(locale);
+            if (entry != null) {
+                final String content = entry.resources.getContent(ordinal);
+                if (content != null && !content.isEmpty())
+                    result.put(locale, content);
+            }
+        }
+        return result;
+    }
+
+    // Forces the locale to be reloaded the next time it's needed,
+    // which should be called after its resources have been saved.
+    public void invalidate(final String locale) {
+        mInvalidated.add(locale);
+    }
+
+    //endregion
+
+    //region Loading and saving
+
+    // Reloads those locales whose file changed since they were indexed. The excluded
+    // locale is not needed (and may be the one being edited), so it's left as it is
+    private void refresh(final String excludeLocale) {
+        if (mIds == null)
+            mIds = ResourceIds.fromResources(mRepo.loadDefaultResources());
+
+        boolean changed = mEntries.keySet().retainAll(mRepo.getLocales());
+        for (Iterator<String> it = mInvalidated.iterator(); it.hasNext(); ) {
+            changed |= mEntries.remove(it.next()) != null;
+            it.remove();
+        }
+
+        for (String locale : mRepo.getLocales()) {
+            if (locale.equals(RepoHandler.DEFAULT_LOCALE) || locale.equals(excludeLocale))
+                continue;
+
+            final File file = mRepo.getResourcesFile(locale);
+            long stamp = getStamp(file);
+            final Entry entry = mEntries.get(locale);
+            if (entry == null || entry.stamp != stamp) {
+                if (System.currentTimeMillis() - file.lastModified() < RACY_MS)
+                    stamp = RACY_STAMP;
+
+                mEntries.put(locale, new Entry(stamp,
+                        CompactResources.fromResources(mIds, mRepo.loadResources(locale))));
+                changed = true;
+            }
+        }
+
+        if (changed)
+            save();
+    }
+
+    private static long getStamp(final File file) {
+        return file.isFile() ? file.lastModified() * 31 + file.length() : 0;
+    }
+
+    private void load() {
+        if (!mIndexFile.isFile())
+            return;
+
+        try {
+            final JSONObject json = new JSONObject(FileUtils.readTextFile(mIndexFile));
+
+            final ResourceIds ids = new ResourceIds();
+            final JSONArray idsArray = json.getJSONArray("ids");
+            for (int i = 0; i < idsArray.length(); ++i)
+                ids.add(idsArray.getString(i));
+
+            final JSONObject locales = json.getJSONObject("locales");
+            final Iterator<String> it = locales.keys();
+            while (it.hasNext()) {
+                final String locale = it.next();
+                final JSONObject localeJson = locales.getJSONObject(locale);
+                final JSONArray contentsArray = localeJson.getJSONArray("contents");
+
+                final String[] contents = new String[contentsArray.length()];
+                for (int i = 0; i < contents.length; ++i)
+                    if (!contentsArray.isNull(i))
+                        contents[i] = contentsArray.getString(i);
+
+                mEntries.put(locale, new Entry(localeJson.getLong("stamp"),
+                        new CompactResources(ids, contents)));
+            }
+            mIds = ids;
+        } catch (JSONException e) {
+            e.printStackTrace();
+            mEntries.clear();
+        }
+    }
+
+    private void save() {
+        try {
+            final JSONObject json = new JSONObject();
+
+            final ArrayList<String> ids = new ArrayList<>(mIds.size());
+            for (int i = 0; i < mIds.size(); ++i)
+                ids.add(mIds.get(i));
+            json.put("ids", new JSONArray(ids));
+
+            final JSONObject locales = new JSONObject();
+            for (String locale : mEntries.keySet()) {
+                final Entry entry = mEntries.get(locale);
+                final JSONArray contents = new JSONArray();
+                for (String content : entry.resources.getContents())
+                    contents.put(content == null ? JSONObject.NULL : content);
+
+                final JSONObject localeJson = new JSONObject();
+                localeJson.put("stamp", entry.stamp);
+                localeJson.put("contents", contents);
+                locales.put(locale, localeJson);
+            }
+            json.put("locales", locales);
+
+            FileUtils.writeFile(mIndexFile, json.toString());
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    //endregion
+}
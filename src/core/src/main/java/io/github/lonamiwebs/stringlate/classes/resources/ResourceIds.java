@@ -0,0 +1,74 @@
+package io.github.lonamiwebs.stringlate.classes.resources;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import io.github.lonamiwebs.stringlate.classes.resources.tags.ResTag;
+
+// Dictionary shared by all the locales of a repository, mapping every resource ID
+// to a small integer (its ordinal). Per-locale content can then be stored in plain
+// arrays indexed by said ordinal (see CompactResources) instead of every locale
+// keeping its own copy of the IDs and a map to look them up.
+public class ResourceIds {
+
+    //region Members
+
+    private final HashMap<String, Integer> mOrdinals;
+    private String[] mIds;
+    private int mCount;
+
+    //endregion
+
+    //region Constructors
+
+    public ResourceIds() {
+        mOrdinals = new HashMap<>();
+        mIds = new String[16];
+    }
+
+    // The default resources will be the most common IDs, so they're added first
+    public static ResourceIds fromResources(final Resources defaultResources) {
+        final ResourceIds result = new ResourceIds();
+        result.mIds = new String[Math.max(16, defaultResources.count())];
+        for (ResTag rt : defaultResources)
+            result.add(rt.getId());
+
+        return result;
+    }
+
+    //endregion
+
+    //region Getting ordinals
+
+    public synchronized int size() {
+        return mCount;
+    }
+
+    // Returns -1 if the ID isn't known
+    public synchronized int ordinal(final String id) {
+        final Integer ordinal = mOrdinals.get(id);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    // Returns the ordinal for the given ID, adding it if it wasn't known
+    public synchronized int add(final String id) {
+        final Integer ordinal = mOrdinals.get(id);
+        if (ordinal != null)
+            return ordinal;
+
+        if (mCount == mIds.length)
+            mIds = Arrays.copyOf(mIds, mCount * 2);
+
+        mIds[mCount] = id;
+        mOrdinals.put(id, mCount);
+        return mCount++;
+    }
+
+    public synchronized String get(final int ordinal) {
+        if (ordinal < 0 || ordinal >= mCount)
+            throw new IndexOutOfBoundsException("Unknown ordinal " + ordinal);
+        return mIds[ordinal];
+    }
+
+    //endregion
+}
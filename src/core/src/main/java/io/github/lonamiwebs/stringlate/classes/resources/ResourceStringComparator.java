@@ -8,6 +8,9 @@ public class ResourceStringComparator {
     public static final int SORT_ALPHABETICALLY = 0;
     public static final int SORT_STRING_LENGTH = 1;
 
+    // How many sort methods there are, used by Resources to cache its sorted views
+    static final int SORT_METHOD_COUNT = 2;
+
     public static Comparator<ResTag> getStringsComparator(int sortMethod) {
         switch (sortMethod) {
             default:
@@ -5,18 +5,26 @@ import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
 import org.xmlpull.v1.XmlSerializer;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import io.github.lonamiwebs.stringlate.classes.resources.tags.ResPlurals;
 import io.github.lonamiwebs.stringlate.classes.resources.tags.ResStringArray;
@@ -35,8 +43,15 @@ public class Resources implements Iterable<ResTag> {
     private ResTag mLastTag; // The last tag returned by getTag()
 
     private boolean mSavedChanges;
+    private final Object mSaveLock = new Object(); // Only one save() writes at a time
     private boolean mModified;
 
+    // Bumped on every change that may alter the iteration order, so the
+    // sorted views below know when they need to be rebuilt
+    private int mVersion;
+    private final ResTag[][] mSortedViews = new ResTag[ResourceStringComparator.SORT_METHOD_COUNT][];
+    private final int[] mSortedVersions = new int[ResourceStringComparator.SORT_METHOD_COUNT];
+
     //endregion
 
     //region Constructors
@@ -48,10 +63,8 @@ public class Resources implements Iterable<ResTag> {
             InputStream is = null;
             try {
                 is = new FileInputStream(file);
-                // Load the resources from the XML into our resulting Resources
-                final XmlPullParser parser = XmlPullParserFactory.newInstance().newPullParser();
-                ResourcesParser.loadFromXml(is, result, parser);
-            } catch (IOException | XmlPullParserException e) {
+                load(is, result);
+            } catch (IOException e) {
                 e.printStackTrace();
             } finally {
                 try {
@@ -66,14 +79,127 @@ public class Resources implements Iterable<ResTag> {
         return result;
     }
 
+    // Loads the resources from an XML stream (which is not closed), for
+    // those which don't come from a file. These resources cannot be saved
+    public static Resources fromStream(final InputStream is) {
+        final Resources result = new Resources(null);
+        load(is, result);
+        return result;
+    }
+
+    private static void load(final InputStream is, final Resources result) {
+        try {
+            // Load the resources from the XML into our resulting Resources
+            final XmlPullParser parser = XmlPullParserFactory.newInstance().newPullParser();
+            ResourcesParser.loadFromXml(is, result, parser);
+        } catch (IOException | XmlPullParserException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Loads several files into a single (unsaveable) Resources object.
+    // The files are parsed concurrently, but if the same ID is present in
+    // more than one file, the one appearing last in the given array wins.
+    public static Resources fromFiles(final File[] files) {
+        if (files.length == 1) {
+            final Resources single = fromFile(files[0]);
+            final Resources result = new Resources(null, single.count());
+            result.mStrings.putAll(single.mStrings);
+            return result;
+        }
+
+        final Resources[] loaded = new Resources[files.length];
+        final int threads = Math.min(files.length, Runtime.getRuntime().availableProcessors());
+        if (threads > 1) {
+            final ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                final ArrayList<Future<Resources>> futures = new ArrayList<>(files.length);
+                for (final File file : files) {
+                    futures.add(executor.submit(new Callable<Resources>() {
+                        @Override
+                        public Resources call() {
+                            return fromFile(file);
+                        }
+                    }));
+                }
+                for (int i = 0; i < files.length; ++i) {
+                    try {
+                        loaded[i] = futures.get(i).get();
+                    } catch (ExecutionException e) {
+                        e.printStackTrace();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        int size = 0;
+        for (int i = 0; i < files.length; ++i) {
+            if (loaded[i] == null)
+                loaded[i] = fromFile(files[i]); // Single core, or the parallel load failed
+
+            size += loaded[i].count();
+        }
+
+        // Merge in order so that conflicts are resolved the same way every time
+        final Resources result = new Resources(null, size);
+        for (Resources resources : loaded)
+            result.mStrings.putAll(resources.mStrings);
+
+        return result;
+    }
+
+    // Loads the file without parsing it, using (or building) the index saved to indexFile.
+    // The content of the strings is only parsed out of the file when it's first needed,
+    // so this is meant for huge files which are mostly read, such as the default strings.
+    // If the file can't be indexed, it's parsed as usual.
+    public static Resources fromFileLazy(final File file, final File indexFile) {
+        final Resources result = new Resources(file);
+        if (file.isFile()) {
+            final ResourcesIndex index = ResourcesIndex.open(file, indexFile);
+            if (index == null)
+                return fromFile(file);
+
+            index.loadInto(result);
+        }
+        return result;
+    }
+
+    // Like fromFiles(), but loading each file lazily. The index of every
+    // file is kept under indexDir, named after the path of the file
+    public static Resources fromFilesLazy(final File[] files, final File indexDir) {
+        final Resources[] loaded = new Resources[files.length];
+        int size = 0;
+        for (int i = 0; i < files.length; ++i) {
+            final String path = files[i].getAbsolutePath();
+            loaded[i] = fromFileLazy(files[i], new File(indexDir,
+                    files[i].getName() + "." + Integer.toHexString(path.hashCode()) + ".idx"));
+            size += loaded[i].count();
+        }
+
+        final Resources result = new Resources(null, size);
+        for (Resources resources : loaded)
+            result.mStrings.putAll(resources.mStrings);
+
+        return result;
+    }
+
     // Empty resources cannot be saved
     public static Resources empty() {
         return new Resources(null);
     }
 
     private Resources(File file) {
+        this(file, 16);
+    }
+
+    private Resources(File file, int expectedCount) {
         mFile = file;
-        mStrings = new HashMap<>();
+        // HashMap's default load factor is 0.75, so leave room to avoid rehashing
+        mStrings = new HashMap<>(Math.max(16, (int) (expectedCount / 0.75f) + 1));
         mReferenceStrings = new HashMap<>();
         mSavedChanges = mFile != null && mFile.isFile();
     }
@@ -135,7 +261,7 @@ public class Resources implements Iterable<ResTag> {
 
     //region Updating (setting) content
 
-    public void setContent(final ResTag original, final String content) {
+    public synchronized void setContent(final ResTag original, final String content) {
         if (content == null)
             throw new IllegalArgumentException();
         String resourceId = original == null ? "" : original.getId();
@@ -152,6 +278,7 @@ public class Resources implements Iterable<ResTag> {
         if (rs != null) {
             if (rs.setContent(content)) {
                 mSavedChanges = false;
+                mVersion++; // The length may have changed
             }
         } else {
             // We need to treat string arrays and plurals specially
@@ -191,13 +318,15 @@ public class Resources implements Iterable<ResTag> {
                 mStrings.put(clone.getId(), clone);
             }
             mSavedChanges = false;
+            mVersion++;
         }
     }
 
-    public void addTag(ResTag rt) {
+    public synchronized void addTag(ResTag rt) {
         // If it's null, there was no old value, so changes won't not saved
         if (mStrings.put(rt.getId(), rt) == null)
             mSavedChanges = false;
+        mVersion++;
     }
 
     // To be used by the ResourcesParser
@@ -208,14 +337,26 @@ public class Resources implements Iterable<ResTag> {
             mStrings.put(rt.getId(), rt);
 
         mModified |= rt.wasModified();
+        mVersion++;
+    }
+
+    // To be used when loading lazily, since loadTag() would need to load the content.
+    // The tag must be known not to be a reference to another string
+    void loadLazyTag(ResTag rt) {
+        mStrings.put(rt.getId(), rt);
+        mModified |= rt.wasModified();
+        mVersion++;
     }
 
     //endregion
 
     //region Deleting content
 
-    public void deleteId(String resourceId) {
-        mStrings.remove(resourceId);
+    public synchronized void deleteId(String resourceId) {
+        if (mStrings.remove(resourceId) != null) {
+            mSavedChanges = false;
+            mVersion++;
+        }
         if (mLastTag != null && mLastTag.getId().equals(resourceId))
             mLastTag = null;
     }
@@ -235,30 +376,65 @@ public class Resources implements Iterable<ResTag> {
 
     // If there are unsaved changes, saves the file
     // If the file was saved successfully or there were no changes to save, returns true
+    //
+    // May be called from any thread. The strings are only locked while they're serialized
+    // into memory, so they can keep being modified while the file is being written
     public boolean save() {
-        if (mSavedChanges)
-            return true;
-
         if (mFile == null)
             return false;
 
-        try {
-            if (!mFile.getParentFile().isDirectory())
-                mFile.getParentFile().mkdirs();
-
-            FileOutputStream out = new FileOutputStream(mFile);
-            final XmlSerializer serializer = XmlPullParserFactory.newInstance().newSerializer();
-            mSavedChanges = ResourcesParser.parseToXml(this, out, serializer);
-            mModified = true;
-            out.close();
-        } catch (IOException | XmlPullParserException e) {
-            e.printStackTrace();
-        }
-        // We do not want empty files, if it exists and it's empty delete it
-        if (mFile.isFile() && mFile.length() == 0)
-            mFile.delete();
+        synchronized (mSaveLock) {
+            final ByteArrayOutputStream xml = new ByteArrayOutputStream();
+            synchronized (this) {
+                if (mSavedChanges)
+                    return true;
+
+                try {
+                    final XmlSerializer serializer = XmlPullParserFactory.newInstance().newSerializer();
+                    if (!ResourcesParser.parseToXml(this, xml, serializer))
+                        return false;
+                } catch (XmlPullParserException e) {
+                    e.printStackTrace();
+                    return false;
+                }
+                // Any change made while writing will set it to false again
+                mSavedChanges = true;
+                mModified = true;
+            }
+
+            boolean ok = false;
+            if (xml.size() == 0) {
+                // We do not want empty files, if it exists delete it
+                ok = !mFile.isFile() || mFile.delete();
+            } else {
+                if (!mFile.getParentFile().isDirectory())
+                    mFile.getParentFile().mkdirs();
 
-        return mFile.isFile();
+                FileOutputStream out = null;
+                try {
+                    out = new FileOutputStream(mFile);
+                    out.write(xml.toByteArray());
+                    out.close();
+                    out = null;
+                    ok = true;
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    if (out != null) {
+                        try {
+                            out.close();
+                        } catch (IOException ignored) {
+                        }
+                    }
+                }
+            }
+            if (!ok) {
+                synchronized (this) {
+                    mSavedChanges = false;
+                }
+            }
+            return ok && mFile.isFile();
+        }
     }
 
     public boolean delete() {
@@ -278,28 +454,113 @@ public class Resources implements Iterable<ResTag> {
 
     //region Iterator wrapper
 
+    // Iterates over the strings in no particular order without copying them.
+    // The resources must not be modified while the iteration is in progress.
     @Override
     public Iterator<ResTag> iterator() {
-        return sortIterator(null, null);
+        return Collections.unmodifiableCollection(mStrings.values()).iterator();
     }
 
+    // Iterates over the strings sorted by any of the ResourceStringComparator methods.
+    // The sorted view is cached until the resources change, so repeated calls
+    // (e.g. whenever the UI refreshes) don't need to copy and sort all the strings.
+    public Iterator<ResTag> sortIterator(final int sortMethod, final Set<String> filterIDs) {
+        final int i = sortMethod >= 0 && sortMethod < ResourceStringComparator.SORT_METHOD_COUNT ?
+                sortMethod : ResourceStringComparator.SORT_ALPHABETICALLY;
+
+        if (mSortedViews[i] == null || mSortedVersions[i] != mVersion) {
+            final ResTag[] view = mStrings.values().toArray(new ResTag[mStrings.size()]);
+            Arrays.sort(view, ResourceStringComparator.getStringsComparator(i));
+            mSortedViews[i] = view;
+            mSortedVersions[i] = mVersion;
+        }
+
+        return filter(new ArrayIterator(mSortedViews[i]), filterIDs);
+    }
+
+    // Used for comparators other than the ones provided by ResourceStringComparator,
+    // these can't be cached so the strings are copied and sorted every time.
     public Iterator<ResTag> sortIterator(final Comparator<ResTag> comparator, final Set<String> filterIDs) {
-        final ArrayList<ResTag> strings = new ArrayList<>(mStrings.size());
-        if (filterIDs == null || filterIDs.isEmpty()) {
-            for (Map.Entry<String, ResTag> srt : mStrings.entrySet()) {
-                strings.add(srt.getValue());
-            }
-        } else {
-            for (Map.Entry<String, ResTag> srt : mStrings.entrySet()) {
-                if (filterIDs.contains(srt.getKey())) {
-                    strings.add(srt.getValue());
+        if (comparator == null)
+            return filter(iterator(), filterIDs);
+
+        final ArrayList<ResTag> strings = new ArrayList<>(mStrings.values());
+        Collections.sort(strings, comparator);
+        return filter(strings.iterator(), filterIDs);
+    }
+
+    private static Iterator<ResTag> filter(final Iterator<ResTag> it, final Set<String> filterIDs) {
+        return filterIDs == null || filterIDs.isEmpty() ? it : new FilterIterator(it, filterIDs);
+    }
+
+    // Read-only iterator over a (cached) snapshot of the strings
+    private static class ArrayIterator implements Iterator<ResTag> {
+        private final ResTag[] mArray;
+        private int mIndex;
+
+        ArrayIterator(final ResTag[] array) {
+            mArray = array;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return mIndex < mArray.length;
+        }
+
+        @Override
+        public ResTag next() {
+            if (mIndex >= mArray.length)
+                throw new NoSuchElementException();
+            return mArray[mIndex++];
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    // Lazily skips those strings whose ID is not in the filter set
+    private static class FilterIterator implements Iterator<ResTag> {
+        private final Iterator<ResTag> mIterator;
+        private final Set<String> mFilterIDs;
+        private ResTag mNext;
+
+        FilterIterator(final Iterator<ResTag> iterator, final Set<String> filterIDs) {
+            mIterator = iterator;
+            mFilterIDs = filterIDs;
+            advance();
+        }
+
+        private void advance() {
+            mNext = null;
+            while (mIterator.hasNext()) {
+                final ResTag rt = mIterator.next();
+                if (mFilterIDs.contains(rt.getId())) {
+                    mNext = rt;
+                    break;
                 }
             }
         }
-        if (comparator != null)
-            Collections.sort(strings, comparator);
 
-        return strings.iterator();
+        @Override
+        public boolean hasNext() {
+            return mNext != null;
+        }
+
+        @Override
+        public ResTag next() {
+            if (mNext == null)
+                throw new NoSuchElementException();
+            final ResTag result = mNext;
+            advance();
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
     }
 
     //endregion
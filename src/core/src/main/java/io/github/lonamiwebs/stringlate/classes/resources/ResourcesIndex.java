@@ -0,0 +1,742 @@
+package io.github.lonamiwebs.stringlate.classes.resources;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+
+import io.github.lonamiwebs.stringlate.classes.resources.tags.LazyString;
+import io.github.lonamiwebs.stringlate.classes.resources.tags.ResTag;
+import io.github.lonamiwebs.stringlate.classes.resources.tags.ResType;
+
+// Index of where every resource is found in a strings.xml file, so that the file can be
+// loaded without parsing it. The file is memory-mapped, and the content of a string is
+// only parsed (out of the bytes between its tags) when it's first needed.
+//
+// Building the index only needs a quick scan over the tags of the file, and it's saved
+// to disk so that opening the same file again doesn't even need that. The length of
+// every string is also saved, so strings can be counted and sorted without loading them.
+//
+// Only the <string>s are loaded lazily. The string arrays, the plurals, and the strings
+// which reference others, are few, and so they're parsed when the file is loaded.
+class ResourcesIndex implements LazyString.Loader {
+
+    //region Members
+
+    private static final int MAGIC = 0x53494458; // "SIDX"
+    private static final int VERSION = 1;
+
+    // A <string> loaded lazily
+    private static final byte KIND_STRING = 0;
+    // Any other element, parsed when the file is loaded
+    private static final byte KIND_ELEMENT = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte[] COMMENT_START = ascii("<!--");
+    private static final byte[] COMMENT_END = ascii("-->");
+    private static final byte[] CDATA_START = ascii("<![CDATA[");
+    private static final byte[] CDATA_END = ascii("]]>");
+    private static final byte[] PI_START = ascii("<?");
+    private static final byte[] PI_END = ascii("?>");
+
+    private final File mFile;
+    private final long mLength;
+    private final long mLastModified;
+    private final ByteBuffer mBuffer;
+
+    // Declared by the file, null if it's UTF-8 (or not declared, which means UTF-8)
+    private String mEncoding;
+    private final ArrayList<Entry> mEntries = new ArrayList<>();
+
+    // The file as it is now, parsed only if it changed since it was indexed
+    private Resources mChanged;
+
+    // Creating a factory is slow, so it's only done once
+    private static XmlPullParserFactory sParserFactory;
+
+    private static class Entry {
+        final byte kind;
+        final int offset; // Where the element starts, including its tags
+        final int length;
+
+        // Only used by strings
+        String id;
+        boolean modified;
+        int contentLength;
+        // Text content (which needs no XML parser) is found between these
+        boolean plain;
+        int contentStart;
+        int contentEnd;
+
+        Entry(final byte kind, final int offset, final int length) {
+            this.kind = kind;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    // Thrown when the file can't be scanned (it will be parsed as usual instead)
+    private static class UnsupportedException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedException(final String message) {
+            super(message);
+        }
+    }
+
+    //endregion
+
+    //region Constructor
+
+    private ResourcesIndex(final File file, final ByteBuffer buffer,
+                           final long length, final long lastModified) {
+        mFile = file;
+        mBuffer = buffer;
+        mLength = length;
+        mLastModified = lastModified;
+    }
+
+    // Returns null if the file can't be indexed, in which case it should be parsed instead
+    static ResourcesIndex open(final File file, final File indexFile) {
+        final long length = file.length();
+        final long lastModified = file.lastModified();
+        if (length > Integer.MAX_VALUE)
+            return null;
+
+        final ByteBuffer buffer;
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close(); // The mapping stays valid
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        final ResourcesIndex result = new ResourcesIndex(file, buffer, length, lastModified);
+        if (indexFile != null && result.load(indexFile))
+            return result;
+
+        try {
+            result.scan();
+        } catch (UnsupportedException e) {
+            return null;
+        }
+        if (indexFile != null)
+            result.save(indexFile);
+
+        return result;
+    }
+
+    //endregion
+
+    //region Loading into resources
+
+    void loadInto(final Resources resources) {
+        for (int i = 0; i < mEntries.size(); ++i) {
+            final Entry entry = mEntries.get(i);
+            if (entry.kind == KIND_STRING) {
+                resources.loadLazyTag(new LazyString(
+                        entry.id, entry.modified, entry.contentLength, this, i));
+            } else {
+                parseInto(entry, resources);
+            }
+        }
+    }
+
+    @Override
+    public String load(final int key) {
+        final Entry entry = mEntries.get(key);
+        if (mFile.length() != mLength || mFile.lastModified() != mLastModified)
+            return loadChanged(entry.id);
+
+        if (entry.plain) {
+            final String text = decodeText(entry.contentStart, entry.contentEnd);
+            return text == null ? "" : text;
+        }
+
+        final Resources resources = Resources.empty();
+        parseInto(entry, resources);
+        final ResTag tag = resources.getTag(entry.id);
+        return tag == null ? "" : tag.getContent();
+    }
+
+    // The file changed since (e.g. it was synced), so the offsets are wrong and the
+    // mapping may hold what was deleted. Parse it as it is now instead, only once.
+    private synchronized String loadChanged(final String id) {
+        if (mChanged == null)
+            mChanged = Resources.fromFile(mFile);
+
+        final ResTag tag = mChanged.getTag(id);
+        return tag == null ? "" : tag.getContent(); // Empty if it's no longer there
+    }
+
+    // Parses the element alone, which gives exactly the same result as parsing the file.
+    // Returns false if the element is malformed
+    private boolean parseInto(final Entry entry, final Resources resources) {
+        final byte[] prefix = ascii(mEncoding == null ? "<resources>" :
+                "<?xml version=\"1.0\" encoding=\"" + mEncoding + "\"?><resources>");
+        final byte[] suffix = ascii("</resources>");
+
+        final byte[] xml = new byte[prefix.length + entry.length + suffix.length];
+        System.arraycopy(prefix, 0, xml, 0, prefix.length);
+        final ByteBuffer element = mBuffer.duplicate();
+        element.position(entry.offset);
+        element.get(xml, prefix.length, entry.length);
+        System.arraycopy(suffix, 0, xml, prefix.length + entry.length, suffix.length);
+
+        try {
+            ResourcesParser.loadFromXml(new ByteArrayInputStream(xml), resources, newParser());
+            return true;
+        } catch (IOException | XmlPullParserException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static synchronized XmlPullParser newParser() throws XmlPullParserException {
+        if (sParserFactory == null)
+            sParserFactory = XmlPullParserFactory.newInstance();
+        return sParserFactory.newPullParser();
+    }
+
+    //endregion
+
+    //region Scanning
+
+    // Finds the elements under <resources> the same way ResourcesParser would read them
+    private void scan() throws UnsupportedException {
+        mEntries.clear();
+        int pos = scanProlog();
+
+        final Tag root = readTag(pos);
+        if (!ResourcesParser.RESOURCES.equals(root.name))
+            throw new UnsupportedException("The root element is not <resources>");
+
+        if (ResourcesParser.MISSING_TRANSLATION.equals(root.get(ResourcesParser.TOOLS_IGNORE)))
+            return; // Nothing needs to be translated
+        if (root.selfClosing)
+            return;
+
+        pos = root.end;
+        while (true) {
+            pos = indexOf('<', pos);
+            if (pos == -1)
+                throw new UnsupportedException("<resources> is never closed");
+
+            final int skipped = skipSpecial(pos);
+            if (skipped != -1) {
+                pos = skipped;
+                continue;
+            }
+            if (at(pos + 1) == '/')
+                break; // </resources>
+
+            final Tag tag = readTag(pos);
+            final int contentEnd, end;
+            if (tag.selfClosing) {
+                contentEnd = end = tag.end;
+            } else {
+                contentEnd = findEndTag(tag.end);
+                end = indexOf('>', contentEnd) + 1;
+                if (end == 0)
+                    throw new UnsupportedException("Unclosed end tag");
+            }
+            addElement(tag, pos, tag.end, contentEnd, end);
+            pos = end;
+        }
+    }
+
+    private void addElement(final Tag tag, final int start,
+                            final int contentStart, final int contentEnd, final int end)
+            throws UnsupportedException {
+        for (String attr : ResourcesParser.TRANSLATABLE)
+            if ("false".equals(tag.get(attr)))
+                return;
+
+        final boolean ignored = ResourcesParser.MISSING_TRANSLATION.equals(
+                tag.get(ResourcesParser.TOOLS_IGNORE));
+
+        switch (ResType.fromTagName(tag.name)) {
+            case STRING:
+                final String id = tag.get(ResourcesParser.ID);
+                if (ignored || id == null || contentStart == contentEnd)
+                    return;
+
+                final Entry entry = new Entry(KIND_STRING, start, end - start);
+                entry.id = ResType.STRING.markID(id).trim();
+                entry.modified = Boolean.parseBoolean(tag.get(ResourcesParser.MODIFIED));
+                entry.contentLength = getTextLength(contentStart, contentEnd);
+                entry.plain = entry.contentLength != -1;
+                entry.contentStart = contentStart;
+                entry.contentEnd = contentEnd;
+                if (!entry.plain) {
+                    // Not just text (or it may reference another string), parse it to know
+                    final Resources parsed = Resources.empty();
+                    if (!parseInto(entry, parsed))
+                        throw new UnsupportedException("Malformed string " + id);
+
+                    final ResTag parsedTag = parsed.getTag(entry.id);
+                    if (parsedTag == null) {
+                        // Either empty, or a reference (which are not loaded lazily)
+                        mEntries.add(new Entry(KIND_ELEMENT, start, end - start));
+                        return;
+                    }
+                    entry.contentLength = parsedTag.getContentLength();
+                }
+                mEntries.add(entry);
+                break;
+
+            case STRING_ARRAY:
+            case PLURALS:
+                if (!ignored) {
+                    final Entry element = new Entry(KIND_ELEMENT, start, end - start);
+                    if (!parseInto(element, Resources.empty()))
+                        throw new UnsupportedException("Malformed " + tag.name);
+                    mEntries.add(element);
+                }
+                break;
+        }
+    }
+
+    // The length the content would have once parsed, if it's text which doesn't need the
+    // XML parser (nor is a reference to another string). Otherwise -1
+    private int getTextLength(int start, int end) {
+        if (mEncoding != null)
+            return -1;
+
+        boolean escaped = false;
+        for (int i = start; i < end; ++i) {
+            switch (at(i)) {
+                case '<':
+                case '\r':
+                    return -1;
+                case '&':
+                case '\\':
+                    escaped = true;
+                    break;
+            }
+        }
+
+        if (escaped) {
+            final String text = decodeText(start, end);
+            return text == null || text.startsWith("@") ? -1 : text.length();
+        }
+
+        // The content is trimmed (and every character to trim is a single byte)
+        while (start < end && (at(start) & 0xff) <= ' ')
+            start++;
+        while (end > start && (at(end - 1) & 0xff) <= ' ')
+            end--;
+
+        if (start < end && at(start) == '@')
+            return -1;
+
+        // Count the UTF-16 characters of the UTF-8 bytes
+        int length = 0;
+        for (int i = start; i < end; ++i) {
+            final int b = at(i) & 0xff;
+            if ((b & 0xc0) != 0x80)
+                length += b >= 0xf0 ? 2 : 1;
+        }
+        return length;
+    }
+
+    // Decodes text without any markup the same way it would be parsed, or returns
+    // null if it has any entity the XML parser would need to resolve (or reject)
+    private String decodeText(final int start, final int end) {
+        final String text = unescape(string(start, end), true);
+        return text == null ? null : ResTag.desanitizeContent(text).trim();
+    }
+
+    // Skips the BOM, XML declaration, comments and DOCTYPE before the root element
+    private int scanProlog() throws UnsupportedException {
+        int pos = 0;
+        if (at(0) == (byte) 0xef && at(1) == (byte) 0xbb && at(2) == (byte) 0xbf)
+            pos = 3;
+        else if (at(0) == (byte) 0xfe || at(0) == (byte) 0xff || at(0) == 0)
+            throw new UnsupportedException("UTF-16 or UTF-32 files are not supported");
+
+        if (startsWith(pos, ascii("<?xml"))) {
+            final Tag decl = readTag(pos);
+            final String encoding = decl.get("encoding");
+            if (encoding != null && !encoding.equalsIgnoreCase("UTF-8")) {
+                if (encoding.toUpperCase(Locale.ROOT).startsWith("UTF-"))
+                    throw new UnsupportedException("Unsupported encoding " + encoding);
+                mEncoding = encoding;
+            }
+            pos = decl.end;
+        }
+
+        while (true) {
+            pos = indexOf('<', pos);
+            if (pos == -1)
+                throw new UnsupportedException("There is no root element");
+
+            final int skipped = skipSpecial(pos);
+            if (skipped != -1) {
+                pos = skipped;
+            } else if (at(pos + 1) == '!') {
+                // <!DOCTYPE ...>, possibly with an internal subset [...]
+                final int close = indexOf('>', pos);
+                final int subset = indexOf('[', pos);
+                pos = subset != -1 && subset < close ? indexOf(']', subset) : close;
+                pos = indexOf('>', pos) + 1;
+                if (pos == 0)
+                    throw new UnsupportedException("Unclosed DOCTYPE");
+            } else {
+                return pos;
+            }
+        }
+    }
+
+    // Returns the position after the comment, CDATA or processing instruction
+    // starting at the given position, or -1 if there isn't any of those there
+    private int skipSpecial(final int pos) throws UnsupportedException {
+        final byte[] end;
+        if (startsWith(pos, COMMENT_START))
+            end = COMMENT_END;
+        else if (startsWith(pos, CDATA_START))
+            end = CDATA_END;
+        else if (startsWith(pos, PI_START))
+            end = PI_END;
+        else
+            return -1;
+
+        final int found = indexOf(end, pos + 2);
+        if (found == -1)
+            throw new UnsupportedException("Unclosed comment, CDATA or instruction");
+        return found + end.length;
+    }
+
+    // Returns where the end tag of the element whose content starts at pos begins
+    private int findEndTag(int pos) throws UnsupportedException {
+        int depth = 1;
+        while (true) {
+            pos = indexOf('<', pos);
+            if (pos == -1)
+                throw new UnsupportedException("Unclosed element");
+
+            final int skipped = skipSpecial(pos);
+            if (skipped != -1) {
+                pos = skipped;
+            } else if (at(pos + 1) == '/') {
+                if (--depth == 0)
+                    return pos;
+                pos += 2;
+            } else {
+                final Tag tag = readTag(pos);
+                if (!tag.selfClosing)
+                    depth++;
+                pos = tag.end;
+            }
+        }
+    }
+
+    //endregion
+
+    //region Reading tags
+
+    private static class Tag {
+        String name;
+        final HashMap<String, String> attrs = new HashMap<>();
+        boolean selfClosing;
+        int end; // Position after the closing '>'
+
+        String get(final String attr) {
+            return attrs.get(attr);
+        }
+    }
+
+    // Reads the start tag (or XML declaration) at the given position
+    private Tag readTag(int pos) throws UnsupportedException {
+        final Tag tag = new Tag();
+        pos++; // '<'
+        if (at(pos) == '?')
+            pos++;
+
+        int start = pos;
+        while (pos < mLength && !isNameEnd(at(pos)))
+            pos++;
+        tag.name = string(start, pos);
+
+        while (true) {
+            while (pos < mLength && isSpace(at(pos)))
+                pos++;
+            if (pos >= mLength)
+                throw new UnsupportedException("Unclosed tag " + tag.name);
+
+            final byte b = at(pos);
+            if (b == '>') {
+                tag.end = pos + 1;
+                return tag;
+            } else if (b == '/' || b == '?') {
+                tag.selfClosing = b == '/';
+                tag.end = indexOf('>', pos) + 1;
+                if (tag.end == 0)
+                    throw new UnsupportedException("Unclosed tag " + tag.name);
+                return tag;
+            }
+
+            start = pos;
+            while (pos < mLength && !isNameEnd(at(pos)) && at(pos) != '=')
+                pos++;
+            final String name = string(start, pos);
+
+            while (pos < mLength && isSpace(at(pos)))
+                pos++;
+            if (at(pos) != '=')
+                throw new UnsupportedException("Attribute without value in " + tag.name);
+            pos++;
+            while (pos < mLength && isSpace(at(pos)))
+                pos++;
+
+            final byte quote = at(pos);
+            if (quote != '"' && quote != '\'')
+                throw new UnsupportedException("Unquoted attribute in " + tag.name);
+
+            final int close = indexOf(quote, pos + 1);
+            if (close == -1)
+                throw new UnsupportedException("Unclosed attribute in " + tag.name);
+
+            final String value = unescape(string(pos + 1, close), false);
+            tag.attrs.put(name, value);
+            pos = close + 1;
+        }
+    }
+
+    private static boolean isSpace(final byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private static boolean isNameEnd(final byte b) {
+        return isSpace(b) || b == '>' || b == '/' || b == '?';
+    }
+
+    // Resolves the predefined and numeric entities. Unknown (or invalid) entities
+    // are kept as they are, or null is returned if strict
+    private static String unescape(final String value, final boolean strict) {
+        if (value.indexOf('&') == -1)
+            return value;
+
+        final StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); ++i) {
+            final char c = value.charAt(i);
+            final int semicolon = c == '&' ? value.indexOf(';', i) : -1;
+            if (c == '&' && semicolon == -1 && strict)
+                return null;
+            if (semicolon == -1) {
+                sb.append(c);
+                continue;
+            }
+
+            final String entity = value.substring(i + 1, semicolon);
+            switch (entity) {
+                case "lt":
+                    sb.append('<');
+                    break;
+                case "gt":
+                    sb.append('>');
+                    break;
+                case "amp":
+                    sb.append('&');
+                    break;
+                case "quot":
+                    sb.append('"');
+                    break;
+                case "apos":
+                    sb.append('\'');
+                    break;
+                default:
+                    try {
+                        if (entity.startsWith("#x"))
+                            sb.appendCodePoint(Integer.parseInt(entity.substring(2), 16));
+                        else if (entity.startsWith("#"))
+                            sb.appendCodePoint(Integer.parseInt(entity.substring(1)));
+                        else if (strict)
+                            return null;
+                        else
+                            sb.append('&').append(entity).append(';');
+                    } catch (IllegalArgumentException ignored) {
+                        if (strict)
+                            return null;
+                        sb.append('&').append(entity).append(';');
+                    }
+                    break;
+            }
+            i = semicolon;
+        }
+        return sb.toString();
+    }
+
+    //endregion
+
+    //region Buffer utilities
+
+    private byte at(final int pos) {
+        return pos < mLength ? mBuffer.get(pos) : 0;
+    }
+
+    private boolean startsWith(final int pos, final byte[] prefix) {
+        for (int i = 0; i < prefix.length; ++i)
+            if (at(pos + i) != prefix[i])
+                return false;
+        return true;
+    }
+
+    private int indexOf(final int b, int pos) {
+        for (; pos < mLength; ++pos)
+            if (mBuffer.get(pos) == b)
+                return pos;
+        return -1;
+    }
+
+    private int indexOf(final byte[] what, int pos) {
+        for (; pos <= mLength - what.length; ++pos)
+            if (startsWith(pos, what))
+                return pos;
+        return -1;
+    }
+
+    private String string(final int start, final int end) {
+        final byte[] bytes = new byte[end - start];
+        final ByteBuffer slice = mBuffer.duplicate();
+        slice.position(start);
+        slice.get(bytes);
+        return mEncoding == null ? new String(bytes, UTF8) : new String(bytes, Charset.forName(mEncoding));
+    }
+
+    private static byte[] ascii(final String string) {
+        return string.getBytes(UTF8);
+    }
+
+    //endregion
+
+    //region Saving and loading the index
+
+    private boolean load(final File indexFile) {
+        if (!indexFile.isFile())
+            return false;
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION ||
+                    in.readLong() != mLength || in.readLong() != mLastModified)
+                return false;
+
+            final String encoding = in.readUTF();
+            mEncoding = encoding.isEmpty() ? null : encoding;
+
+            final int count = in.readInt();
+            mEntries.clear();
+            mEntries.ensureCapacity(count);
+            for (int i = 0; i < count; ++i) {
+                final Entry entry = new Entry(in.readByte(), in.readInt(), in.readInt());
+                if (entry.offset < 0 || entry.length < 0 || entry.offset + entry.length > mLength)
+                    return false;
+
+                if (entry.kind == KIND_STRING) {
+                    entry.id = in.readUTF();
+                    entry.modified = in.readBoolean();
+                    entry.contentLength = in.readInt();
+                    entry.plain = in.readBoolean();
+                    entry.contentStart = in.readInt();
+                    entry.contentEnd = in.readInt();
+                    if (entry.contentStart < entry.offset || entry.contentEnd > entry.offset + entry.length)
+                        return false;
+                }
+                mEntries.add(entry);
+            }
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void save(final File indexFile) {
+        final File parent = indexFile.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs())
+            return;
+
+        // Written under another name first, so an index is either complete or missing
+        final File tmpFile = new File(parent, indexFile.getName() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(mLength);
+            out.writeLong(mLastModified);
+            out.writeUTF(mEncoding == null ? "" : mEncoding);
+            out.writeInt(mEntries.size());
+            for (Entry entry : mEntries) {
+                out.writeByte(entry.kind);
+                out.writeInt(entry.offset);
+                out.writeInt(entry.length);
+                if (entry.kind == KIND_STRING) {
+                    out.writeUTF(entry.id);
+                    out.writeBoolean(entry.modified);
+                    out.writeInt(entry.contentLength);
+                    out.writeBoolean(entry.plain);
+                    out.writeInt(entry.contentStart);
+                    out.writeInt(entry.contentEnd);
+                }
+            }
+            out.close();
+            out = null;
+
+            if (!tmpFile.renameTo(indexFile)) {
+                //noinspection ResultOfMethodCallIgnored
+                indexFile.delete();
+                //noinspection ResultOfMethodCallIgnored
+                tmpFile.renameTo(indexFile);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+            }
+            if (tmpFile.exists() && !tmpFile.delete())
+                tmpFile.deleteOnExit();
+        }
+    }
+
+    //endregion
+}
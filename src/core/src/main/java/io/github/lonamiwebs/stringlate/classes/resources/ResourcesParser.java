@@ -11,7 +11,6 @@ import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -41,21 +40,21 @@ public class ResourcesParser {
     // We don't use namespaces
     private final static String ns = null;
 
-    private final static String RESOURCES = "resources";
+    final static String RESOURCES = "resources";
 
-    private final static String ID = "name";
+    final static String ID = "name";
     private final static String QUANTITY = "quantity";
     private final static String INDEX = "index";
-    private final static String MODIFIED = "modified";
+    final static String MODIFIED = "modified";
 
     // Not every application uses the official "translatable" name
-    private final static String[] TRANSLATABLE = {
+    final static String[] TRANSLATABLE = {
             "translatable", "translate", "translateable"
     };
 
     // Nor they use "translatable" instead ignoring missing
-    private final static String TOOLS_IGNORE = "tools:ignore";
-    private final static String MISSING_TRANSLATION = "MissingTranslation";
+    final static String TOOLS_IGNORE = "tools:ignore";
+    final static String MISSING_TRANSLATION = "MissingTranslation";
 
     private final static boolean DEFAULT_TRANSLATABLE = true;
     private final static boolean DEFAULT_MODIFIED = false;
@@ -141,6 +140,8 @@ public class ResourcesParser {
 
         parser.require(XmlPullParser.START_TAG, ns, ResType.STRING.toString());
         if (MISSING_TRANSLATION.equals(parser.getAttributeValue(null, TOOLS_IGNORE))) {
+            // The tag must be consumed, or the rest of the file would be lost
+            skip(parser);
             return null;
         }
 
@@ -169,7 +170,8 @@ public class ResourcesParser {
 
         parser.require(XmlPullParser.START_TAG, ns, ResType.STRING_ARRAY.toString());
         if (MISSING_TRANSLATION.equals(parser.getAttributeValue(null, TOOLS_IGNORE))) {
-            return null;
+            skip(parser);
+            return new ArrayList<>();
         }
 
         if (!readFirstBooleanAttr(parser, TRANSLATABLE, DEFAULT_TRANSLATABLE)) {
@@ -212,7 +214,8 @@ public class ResourcesParser {
 
         parser.require(XmlPullParser.START_TAG, ns, ResType.PLURALS.toString());
         if (MISSING_TRANSLATION.equals(parser.getAttributeValue(null, TOOLS_IGNORE))) {
-            return null;
+            skip(parser);
+            return new ArrayList<>();
         }
 
         if (!readFirstBooleanAttr(parser, TRANSLATABLE, DEFAULT_TRANSLATABLE)) {
@@ -447,35 +450,41 @@ public class ResourcesParser {
     //region Xml -> Xml without untranslatable strings
 
     public static void cleanXml(File file, Resources resources) {
-        try {
-            String xml = FileUtils.readTextFile(file);
+        final String xml = cleanXml(FileUtils.readTextFile(file), resources);
+        if (xml != null)
+            FileUtils.writeFile(file, xml);
+    }
 
-            // 1. Find dirty tags (those which are untranslatable)
-            Queue<DirtyRange> dirtyRanges = new LinkedList<>();
+    // Returns the xml without the untranslatable strings, or null if it had none
+    public static String cleanXml(String xml, Resources resources) {
+        // 1. Find dirty tags (those which are untranslatable)
+        Queue<DirtyRange> dirtyRanges = new LinkedList<>();
 
-            Matcher mTag = RES_TAG_PATTERN.matcher(xml);
-            while (mTag.find()) {
-                String id = getAttr(mTag.group(3), ID);
-                if (id.isEmpty())
-                    continue;
-
-                if (!resources.contains(id)) {
-                    // Decrease the range by 1 not to eat up the next character (due to the i++)
-                    dirtyRanges.add(new DirtyRange(mTag.start(), mTag.end() - 1));
-                }
-            }
+        Matcher mTag = RES_TAG_PATTERN.matcher(xml);
+        while (mTag.find()) {
+            String id = getAttr(mTag.group(3), ID);
+            if (id.isEmpty())
+                continue;
 
-            // We might want to early terminate if all strings are translatable
-            if (dirtyRanges.isEmpty()) {
-                // Simply return as the file is unmodified
-                return;
+            if (!resources.contains(id)) {
+                // Decrease the range by 1 not to eat up the next character (due to the i++)
+                dirtyRanges.add(new DirtyRange(mTag.start(), mTag.end() - 1));
             }
+        }
 
-            FileOutputStream out = new FileOutputStream(file);
+        // We might want to early terminate if all strings are translatable
+        if (dirtyRanges.isEmpty()) {
+            // Simply return as the xml is unmodified
+            return null;
+        }
 
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
             removeDirtyRanges(xml, dirtyRanges, out);
+            return out.toString();
         } catch (IOException e) {
             e.printStackTrace();
+            return null;
         }
     }
 
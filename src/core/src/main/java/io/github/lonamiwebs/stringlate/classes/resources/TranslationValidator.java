@@ -0,0 +1,236 @@
+package io.github.lonamiwebs.stringlate.classes.resources;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import io.github.lonamiwebs.stringlate.classes.repos.RepoHandler;
+import io.github.lonamiwebs.stringlate.classes.resources.tags.ResPlurals;
+import io.github.lonamiwebs.stringlate.classes.resources.tags.ResTag;
+
+// Checks that translations keep the same format placeholders (%1$s, %d…),
+// (X|HT)ML tags and escape sequences as their original (default) strings.
+// A translation missing these, or using some which don't exist, will at best
+// look wrong and at worst make the application crash when the string is used.
+public class TranslationValidator {
+
+    //region Issues
+
+    public static class Issue {
+        public final String locale;
+        public final String id;
+        public final String token;
+        public final boolean missing; // false if the token is unexpected instead
+
+        Issue(final String locale, final String id, final String token, final boolean missing) {
+            this.locale = locale;
+            this.id = id;
+            this.token = token;
+            this.missing = missing;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s: %s \"%s\"",
+                    locale, id, missing ? "missing" : "unexpected", token);
+        }
+    }
+
+    //endregion
+
+    //region Members
+
+    // Format specifiers as used by String.format(), tags and escape sequences.
+    // Note that the content is already desanitized, so "\n" is a real new line.
+    // Only the flags and conversions found in strings are accepted, otherwise prose
+    // like "50% off" (with the ' ' flag) or "50 % de descuento" would be a specifier.
+    private static final Pattern TOKEN_PATTERN = Pattern.compile(
+            "%(\\d+\\$)?[-#+0,]*\\d*(?:\\.\\d+)?([bBcCdeEfgGhHosSxX%])" +
+                    "|<\\s*(/?)\\s*([a-zA-Z][\\w:-]*)[^>]*?(/?)\\s*>" +
+                    "|\\\\(u[0-9a-fA-F]{4}|.)" +
+                    "|\n");
+
+    private static final String[] NO_TOKENS = new String[0];
+
+    // The default strings, and their signature (sorted tokens) once first needed.
+    // Computing them lazily means the default strings don't need to be loaded
+    // until they're validated (they may be loaded lazily, see Resources.fromFileLazy)
+    private final HashMap<String, ResTag> mDefaultTags;
+    private final ConcurrentHashMap<String, String[]> mSignatures;
+
+    //endregion
+
+    //region Constructor
+
+    public TranslationValidator(final Resources defaultResources) {
+        mDefaultTags = new HashMap<>(defaultResources.count() * 2);
+        for (ResTag rt : defaultResources)
+            mDefaultTags.put(rt.getId(), rt);
+
+        mSignatures = new ConcurrentHashMap<>();
+    }
+
+    //endregion
+
+    //region Tokenizing
+
+    // Returns null if there is no such default string. May be called from any thread
+    private String[] getSignature(final String id) {
+        String[] signature = mSignatures.get(id);
+        if (signature == null) {
+            final ResTag rt = mDefaultTags.get(id);
+            if (rt == null)
+                return null;
+
+            signature = tokenize(rt.getContent());
+            mSignatures.put(id, signature);
+        }
+        return signature;
+    }
+
+    static String[] tokenize(final String content) {
+        ArrayList<String> tokens = null;
+        final Matcher m = TOKEN_PATTERN.matcher(content);
+        while (m.find()) {
+            final String token;
+            if (m.group(2) != null) {
+                if (m.group(2).equals("%"))
+                    continue; // Literal '%', not a placeholder
+
+                // Flags, width and precision may be changed by the translator
+                token = m.group(1) == null ? "%" + m.group(2) : "%" + m.group(1) + m.group(2);
+            } else if (m.group(4) != null) {
+                final String name = m.group(4).toLowerCase(Locale.ENGLISH);
+                if (!m.group(5).isEmpty())
+                    token = "<" + name + "/>";
+                else
+                    token = "<" + m.group(3) + name + ">";
+            } else if (m.group(6) != null) {
+                token = "\\" + m.group(6);
+            } else {
+                token = "\\n";
+            }
+
+            if (tokens == null)
+                tokens = new ArrayList<>();
+            tokens.add(token);
+        }
+
+        if (tokens == null)
+            return NO_TOKENS;
+
+        final String[] result = tokens.toArray(new String[tokens.size()]);
+        Arrays.sort(result);
+        return result;
+    }
+
+    //endregion
+
+    //region Validating
+
+    // Validates a single translation, e.g. while it's being typed.
+    // Never returns null, and the list is empty if there are no issues.
+    public List<Issue> validate(final String locale, final ResTag translated) {
+        final ArrayList<Issue> result = new ArrayList<>();
+        validate(locale, translated, result);
+        return result;
+    }
+
+    public List<Issue> validate(final String locale, final Resources translations) {
+        final ArrayList<Issue> result = new ArrayList<>();
+        for (ResTag rt : translations)
+            validate(locale, rt, result);
+        return result;
+    }
+
+    // Validates every locale of the repository concurrently. The map will
+    // contain an entry for each locale (in the repository's order).
+    public static LinkedHashMap<String, List<Issue>> validateAll(final RepoHandler repo) {
+        final TranslationValidator validator = new TranslationValidator(repo.loadDefaultResources());
+        final ArrayList<String> locales = new ArrayList<>(repo.getLocales());
+        locales.remove(RepoHandler.DEFAULT_LOCALE);
+
+        final LinkedHashMap<String, List<Issue>> result = new LinkedHashMap<>();
+        if (locales.isEmpty())
+            return result;
+
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(locales.size(), Runtime.getRuntime().availableProcessors()));
+        try {
+            final ArrayList<Future<List<Issue>>> futures = new ArrayList<>(locales.size());
+            for (final String locale : locales) {
+                futures.add(executor.submit(new Callable<List<Issue>>() {
+                    @Override
+                    public List<Issue> call() {
+                        return validator.validate(locale, repo.loadResources(locale));
+                    }
+                }));
+            }
+            for (int i = 0; i < locales.size(); ++i) {
+                try {
+                    result.put(locales.get(i), futures.get(i).get());
+                } catch (ExecutionException e) {
+                    e.printStackTrace();
+                    result.put(locales.get(i), Collections.<Issue>emptyList());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        return result;
+    }
+
+    private void validate(final String locale, final ResTag translated, final List<Issue> out) {
+        final String id = translated.getId();
+        String[] expected = getSignature(id);
+
+        // Some languages have more plural quantities than the default
+        // one, so compare these with the most general quantity instead
+        final boolean isPlural = translated instanceof ResPlurals.Item;
+        if (expected == null && isPlural)
+            expected = getSignature(((ResPlurals.Item) translated).getParent().getId() + ":other");
+
+        if (expected == null)
+            return; // Unused string, it will be cleaned up on the next sync
+
+        final String[] found = tokenize(translated.getContent());
+        if (Arrays.equals(expected, found))
+            return;
+
+        // Both arrays are sorted, so walk them in parallel to find the differences
+        int i = 0, j = 0;
+        while (i < expected.length || j < found.length) {
+            final int cmp = i == expected.length ? 1 :
+                    j == found.length ? -1 : expected[i].compareTo(found[j]);
+
+            if (cmp == 0) {
+                i++;
+                j++;
+            } else if (cmp < 0) {
+                // Quantities like "one" often spell the number out, that's fine
+                if (!isPlural || !expected[i].startsWith("%"))
+                    out.add(new Issue(locale, id, expected[i], true));
+                i++;
+            } else {
+                out.add(new Issue(locale, id, found[j], false));
+                j++;
+            }
+        }
+    }
+
+    //endregion
+}
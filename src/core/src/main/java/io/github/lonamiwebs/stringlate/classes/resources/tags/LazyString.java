@@ -0,0 +1,83 @@
+package io.github.lonamiwebs.stringlate.classes.resources.tags;
+
+// A <string> whose content is only loaded (e.g. parsed out of its file) when first needed.
+// Its length is known beforehand, so it can be counted and sorted without loading it.
+public class LazyString extends ResString {
+
+    //region Members
+
+    public interface Loader {
+        // Returns the content of the string with the given key, never null
+        String load(int key);
+    }
+
+    private volatile Loader mLoader; // null once loaded
+    private final int mKey;
+    private final int mLength;
+
+    //endregion
+
+    //region Constructors
+
+    public LazyString(final String id, final boolean modified,
+                      final int length, final Loader loader, final int key) {
+        super(id, "", modified);
+        mLoader = loader;
+        mKey = key;
+        mLength = length;
+    }
+
+    //endregion
+
+    //region Loading
+
+    private void ensureLoaded() {
+        if (mLoader != null) {
+            synchronized (this) {
+                final Loader loader = mLoader;
+                if (loader != null) {
+                    mContent = loader.load(mKey).trim();
+                    mLoader = null;
+                }
+            }
+        }
+    }
+
+    public boolean isLoaded() {
+        return mLoader == null;
+    }
+
+    //endregion
+
+    //region Overrides
+
+    @Override
+    public String getContent() {
+        ensureLoaded();
+        return super.getContent();
+    }
+
+    @Override
+    public int getContentLength() {
+        return mLoader == null ? super.getContentLength() : mLength;
+    }
+
+    @Override
+    public boolean hasContent() {
+        return getContentLength() != 0;
+    }
+
+    @Override
+    public boolean setContent(final String content) {
+        ensureLoaded();
+        return super.setContent(content);
+    }
+
+    @Override
+    public ResTag clone(final String newContent) {
+        ensureLoaded();
+        return super.clone(newContent);
+    }
+
+    //endregion
+}
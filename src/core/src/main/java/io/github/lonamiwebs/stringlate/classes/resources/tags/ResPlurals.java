@@ -66,6 +66,7 @@ public class ResPlurals {
     public class Item extends ResTag {
         final ResPlurals mParent;
         final String mQuantity;
+        private final String mId; // Cached, since it's needed on every lookup
 
         Item(final ResPlurals parent, final String quantity, final String content,
              final boolean modified) {
@@ -75,12 +76,14 @@ public class ResPlurals {
             mQuantity = quantity;
             mContent = content.trim();
             mModified = modified;
+
+            // ':' is not a valid separator for the <string>'s, so use it to avoid conflicts
+            mId = parent.mId + ':' + quantity;
         }
 
         @Override
         public String getId() {
-            // ':' is not a valid separator for the <string>'s, so use it to avoid conflicts
-            return String.format("%s:%s", mParent.mId, mQuantity);
+            return mId;
         }
 
         @Override
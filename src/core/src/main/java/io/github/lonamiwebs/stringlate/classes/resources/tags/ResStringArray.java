@@ -1,7 +1,6 @@
 package io.github.lonamiwebs.stringlate.classes.resources.tags;
 
 import java.util.HashSet;
-import java.util.Locale;
 
 public class ResStringArray {
 
@@ -68,6 +67,7 @@ public class ResStringArray {
     public class Item extends ResTag {
         final ResStringArray mParent;
         final int mIndex;
+        private final String mId; // Cached, since it's needed on every lookup
 
         Item(final ResStringArray parent,
              final int index, String content, final boolean modified) {
@@ -77,12 +77,14 @@ public class ResStringArray {
             mIndex = index;
             mContent = content.trim();
             mModified = modified;
+
+            // ':' is not a valid separator for the <string>'s, so use it to avoid conflicts
+            mId = parent.mId + ':' + index;
         }
 
         @Override
         public String getId() {
-            // ':' is not a valid separator for the <string>'s, so use it to avoid conflicts
-            return String.format(Locale.ENGLISH, "%s:%d", mParent.mId, mIndex);
+            return mId;
         }
 
         public int getIndex() {
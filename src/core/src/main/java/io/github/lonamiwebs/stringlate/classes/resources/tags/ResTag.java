@@ -17,6 +17,16 @@ public abstract class ResTag implements Comparable<ResTag> {
             'U', 'B', 'T', 'N', 'F', 'R'
     };
 
+    // Scratch space for desanitizeContent(), one per thread since strings are parsed
+    // concurrently. It grows as needed, up to a limit
+    static final int MAX_DESANITIZE_BUFFER = 64 * 1024;
+    static final ThreadLocal<char[]> sDesanitizeBuffer = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[256];
+        }
+    };
+
     //endregion
 
     //region Members
@@ -119,19 +129,31 @@ public abstract class ResTag implements Comparable<ResTag> {
     }
 
     // De-sanitizes the content, making it ready to modified outside a strings.xml file
+    //
+    // This runs for every string parsed, so it avoids allocating anything but the result.
+    // The result is never longer than the content, so it's built on a per-thread buffer
     public static String desanitizeContent(String content) {
-        char c;
-        int length = content.length();
-        StringBuilder sb = new StringBuilder(length + 16); // 16 seems to be the default capacity
+        final int length = content.length();
+        int i = 0;
+        while (i < length && !needsDesanitizing(content.charAt(i)))
+            i++;
 
-        for (int i = 0; i < length; i++) {
+        if (i == length)
+            return content; // Nothing to do, which is the case for most strings
+
+        final char[] out = getDesanitizeBuffer(length);
+        content.getChars(0, i, out, 0); // Everything before is kept as-is
+        int o = i;
+
+        char c;
+        for (; i < length; i++) {
             c = content.charAt(i);
             switch (c) {
                 // Unescape these sequences iff we know them
                 case '\\':
                     i++; // Handle the next character here
                     if (i >= length) {
-                        sb.append('\\');
+                        out[o++] = '\\';
                         break;
                     }
                     c = content.charAt(i);
@@ -139,13 +161,14 @@ public abstract class ResTag implements Comparable<ResTag> {
                         case '"':
                         case '\'':
                         case '\\':
-                            sb.append(c);
+                            out[o++] = c;
                             break;
                         case 'n':
-                            sb.append('\n');
+                            out[o++] = '\n';
                             break;
                         default:
-                            sb.append('\\').append(c);
+                            out[o++] = '\\';
+                            out[o++] = c;
                             break;
                     }
                     break;
@@ -154,23 +177,16 @@ public abstract class ResTag implements Comparable<ResTag> {
                     int semicolon = content.indexOf(';', i);
                     if (semicolon < 0) {
                         // Invalid string actually, but nothing we can do.
-                        sb.append('&');
+                        out[o++] = '&';
                     } else {
-                        switch (content.substring(i, semicolon)) {
-                            // These are some of the most-common and "dangerous" cases,
-                            // since not handling them in "sanitize" would cause invalid XML.
-                            case "&lt":
-                                sb.append('<');
-                                break;
-                            case "&gt":
-                                sb.append('>');
-                                break;
-                            case "&amp":
-                                sb.append('&');
-                                break;
-                            default:
-                                sb.append(content.substring(i, semicolon)).append(';');
-                                break;
+                        // These are some of the most-common and "dangerous" cases,
+                        // since not handling them in "sanitize" would cause invalid XML.
+                        final char entity = matchEntity(content, i + 1, semicolon);
+                        if (entity != 0) {
+                            out[o++] = entity;
+                        } else {
+                            content.getChars(i, semicolon + 1, out, o);
+                            o += semicolon + 1 - i;
                         }
                         i = semicolon;
                     }
@@ -178,16 +194,57 @@ public abstract class ResTag implements Comparable<ResTag> {
 
                 // New lines are treated as spaces
                 case '\n':
-                    sb.append(' ');
+                    out[o++] = ' ';
                     break;
 
                 // Normal character
                 default:
-                    sb.append(c);
+                    out[o++] = c;
                     break;
             }
         }
-        return sb.toString();
+        return new String(out, 0, o);
+    }
+
+    private static boolean needsDesanitizing(final char c) {
+        return c == '\\' || c == '&' || c == '\n';
+    }
+
+    // Returns the character for the entity name found in content[start:end],
+    // or 0 if it's not one of the entities which are unescaped
+    private static char matchEntity(final String content, final int start, final int end) {
+        switch (end - start) {
+            case 2:
+                if (content.charAt(start + 1) != 't')
+                    return 0;
+                switch (content.charAt(start)) {
+                    case 'l':
+                        return '<';
+                    case 'g':
+                        return '>';
+                    default:
+                        return 0;
+                }
+            case 3:
+                return content.charAt(start) == 'a' &&
+                        content.charAt(start + 1) == 'm' &&
+                        content.charAt(start + 2) == 'p' ? '&' : 0;
+            default:
+                return 0;
+        }
+    }
+
+    private static char[] getDesanitizeBuffer(final int length) {
+        if (length > MAX_DESANITIZE_BUFFER)
+            return new char[length]; // Don't keep huge buffers around
+
+        char[] buffer = sDesanitizeBuffer.get();
+        if (buffer.length < length) {
+            // Never grows past the maximum, which is what length is at most here
+            buffer = new char[Math.min(MAX_DESANITIZE_BUFFER, Math.max(length, buffer.length * 2))];
+            sDesanitizeBuffer.set(buffer);
+        }
+        return buffer;
     }
 
     // Sanitizes the content, making it ready to be written to a strings.xml file
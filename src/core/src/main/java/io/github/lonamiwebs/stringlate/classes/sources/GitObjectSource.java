@@ -0,0 +1,236 @@
+package io.github.lonamiwebs.stringlate.classes.sources;
+
+import net.gsantner.opoc.util.FileUtils;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectStream;
+import org.eclipse.jgit.lib.Repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.regex.Matcher;
+
+import io.github.lonamiwebs.stringlate.classes.Messenger;
+import io.github.lonamiwebs.stringlate.classes.git.GitCloneProgressCallback;
+import io.github.lonamiwebs.stringlate.classes.git.GitWrapper;
+import io.github.lonamiwebs.stringlate.classes.resources.Resources;
+import io.github.lonamiwebs.stringlate.interfaces.StringsSource;
+
+// Like GitSource, but the repository is cloned without a working tree and the resources
+// are read straight from the git objects of the given revision (any branch or tag), so
+// the XML files are parsed as they're streamed and never written anywhere. Only the few
+// files needed to find the icon and translation services are written to the work dir.
+//
+// The repository is fetched when setting up, unless the source comes from a GitObjectStore.
+public class GitObjectSource implements StringsSource {
+
+    private static final String GIT_DIR = ".git"; // Hidden so it's not searched for resources
+
+    private File mWorkDir;
+    private final String mGitUrl, mRevision;
+    private final GitObjectStore mSharedStore;
+    private GitObjectStore mStore;
+    private Repository mRepo;
+    private final HashMap<String, ObjectId> mObjects; // By path
+    private final HashMap<String, ArrayList<String>> mLocalePaths;
+    private GitCloneProgressCallback mCloneCallback;
+    private boolean mCancelled;
+
+    private File iconFile;
+
+    public GitObjectSource(final String gitUrl, final String revision) {
+        this(gitUrl, revision, null);
+    }
+
+    GitObjectSource(final GitObjectStore store, final String revision) {
+        this(store.getGitUrl(), revision, store);
+    }
+
+    private GitObjectSource(final String gitUrl, final String revision, final GitObjectStore store) {
+        mGitUrl = gitUrl;
+        mRevision = revision;
+        mSharedStore = store;
+        mObjects = new HashMap<>();
+        mLocalePaths = new HashMap<>();
+    }
+
+    @Override
+    public boolean setup(final SourceSettings settings, final File workDir,
+                         final int desiredIconDpi,
+                         final Messenger.OnSyncProgress callback) {
+        callback.onUpdate(1, 0f);
+
+        settings.set("git_url", mGitUrl);
+        mWorkDir = workDir;
+
+        // Fetch the repository (unless it was already), without checking anything out
+        mCloneCallback = new GitCloneProgressCallback(callback);
+        if (mSharedStore == null) {
+            mStore = new GitObjectStore(mGitUrl);
+            if (!mStore.fetch(new File(mWorkDir, GIT_DIR), mCloneCallback) || mCancelled)
+                return false;
+        } else {
+            mStore = mSharedStore;
+        }
+
+        mRepo = mStore.getRepository();
+        if (mRepo == null)
+            return false; // The shared store was not fetched
+
+        final ObjectId commit = GitWrapper.resolveCommit(mRepo, mRevision);
+        if (commit == null || !GitWrapper.writeUsefulResources(
+                mRepo, commit, mWorkDir, mObjects, mCloneCallback) || mCancelled)
+            return false;
+
+        final ArrayList<String> resourcePaths = GitWrapper.searchAndroidResources(mRepo, mObjects);
+        if (resourcePaths.isEmpty() || mCancelled)
+            return false;
+
+        // Save the branches of this repository
+        settings.setArray("remote_branches", mStore.getBranches());
+
+        // The rest of the useful resources were written, so they can be found as usual
+        final GitWrapper.RepositoryResources repoResources =
+                GitWrapper.findUsefulResources(mWorkDir);
+
+        iconFile = GitWrapper.findProperIcon(repoResources, desiredIconDpi);
+
+        // Iterate over all the found resources to sort them by locale
+        for (String path : resourcePaths) {
+            Matcher m = GitSource.VALUES_LOCALE_PATTERN.matcher(path);
+
+            // Ensure that we can tell the locale from the path (otherwise it's invalid)
+            if (m.find()) {
+                if (m.group(1) == null) { // Default locale
+                    // If the file name is something like "do not translate", skip it
+                    if (GitSource.DO_NOT_TRANSLATE.matcher(new File(path).getName()).find())
+                        continue;
+                }
+
+                if (!mLocalePaths.containsKey(m.group(1)))
+                    mLocalePaths.put(m.group(1), new ArrayList<String>());
+
+                mLocalePaths.get(m.group(1)).add(path);
+            }
+        }
+
+        settings.set("translation_service", GitWrapper.mayUseTranslationServices(repoResources));
+        return !mCancelled;
+    }
+
+    @Override
+    public void cancel() {
+        if (mCloneCallback != null) {
+            mCloneCallback.cancel();
+        }
+        mCancelled = true;
+    }
+
+    @Override
+    public String getName() {
+        return "git";
+    }
+
+    @Override
+    public List<String> getLocales() {
+        final ArrayList<String> result = new ArrayList<>(mLocalePaths.size());
+        for (String locale : mLocalePaths.keySet())
+            if (locale != null)
+                result.add(locale);
+        return result;
+    }
+
+    // The names of the resources are their paths in the repository
+
+    @Override
+    public List<String> getTranslatedResources(final String locale) {
+        return new ArrayList<>(mLocalePaths.get(locale));
+    }
+
+    @Override
+    public Resources getTranslatedResource(final String locale, final String name) {
+        if (mLocalePaths.get(locale).contains(name))
+            return loadResources(name);
+
+        throw new IllegalArgumentException("No translated resources were found with that name");
+    }
+
+    @Override
+    public List<String> getDefaultResources() {
+        return new ArrayList<>(mLocalePaths.get(null));
+    }
+
+    @Override
+    public Resources getDefaultResource(String name) {
+        if (mLocalePaths.get(null).contains(name))
+            return loadResources(name);
+
+        throw new IllegalArgumentException("No default resources were found with that name");
+    }
+
+    @Override
+    public String getTranslatedResourceXml(final String locale, String name) {
+        if (mLocalePaths.get(locale).contains(name))
+            return loadXml(name);
+
+        throw new IllegalArgumentException("No XML was found with that name");
+    }
+
+    @Override
+    public String getDefaultResourceXml(String name) {
+        if (mLocalePaths.get(null).contains(name))
+            return loadXml(name);
+
+        throw new IllegalArgumentException("No XML was found with that name");
+    }
+
+    @Override
+    public File getIcon() {
+        return iconFile;
+    }
+
+    private Resources loadResources(final String path) {
+        ObjectStream in = null;
+        try {
+            in = mRepo.open(mObjects.get(path), Constants.OBJ_BLOB).openStream();
+            return Resources.fromStream(in);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Resources.empty();
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    // Returns null if it can't be read, in which case the resources will be used instead
+    private String loadXml(final String path) {
+        try {
+            return new String(mRepo.open(mObjects.get(path), Constants.OBJ_BLOB).getBytes(), "UTF-8");
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public void dispose() {
+        if (mStore != null && mStore != mSharedStore)
+            mStore.close();
+
+        mStore = null;
+        mRepo = null;
+        FileUtils.deleteRecursive(mWorkDir);
+        mObjects.clear();
+        mLocalePaths.clear();
+        iconFile = null;
+    }
+}
@@ -0,0 +1,70 @@
+package io.github.lonamiwebs.stringlate.classes.sources;
+
+import net.gsantner.opoc.util.FileUtils;
+
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import io.github.lonamiwebs.stringlate.classes.git.GitCloneProgressCallback;
+import io.github.lonamiwebs.stringlate.classes.git.GitWrapper;
+
+// A bare clone of a repository, which any number of GitObjectSources can read from at
+// the same time (e.g. one per branch, when syncing several branches at once), so the
+// repository only needs to be fetched once.
+public class GitObjectStore {
+
+    private final String mGitUrl;
+    private File mDir;
+    private Repository mRepo;
+
+    public GitObjectStore(final String gitUrl) {
+        mGitUrl = gitUrl;
+    }
+
+    // Should be called from a background thread
+    public boolean fetch(final File dir, final GitCloneProgressCallback callback) {
+        mDir = dir;
+        if (!GitWrapper.cloneBareRepo(mGitUrl, mDir, callback) || callback.isCancelled())
+            return false;
+
+        try {
+            mRepo = new FileRepositoryBuilder().setGitDir(mDir).setMustExist(true).build();
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // The source reads the given revision (a branch, a tag, or HEAD if empty). Disposing
+    // the source doesn't close the store, which must be closed when no source uses it
+    public GitObjectSource getSource(final String revision) {
+        return new GitObjectSource(this, revision);
+    }
+
+    // Never returns null
+    public ArrayList<String> getBranches() {
+        return mRepo == null ? new ArrayList<String>() : GitWrapper.getBareBranches(mRepo);
+    }
+
+    String getGitUrl() {
+        return mGitUrl;
+    }
+
+    Repository getRepository() {
+        return mRepo;
+    }
+
+    public void close() {
+        if (mRepo != null) {
+            mRepo.close();
+            mRepo = null;
+        }
+        if (mDir != null)
+            FileUtils.deleteRecursive(mDir);
+    }
+}
@@ -27,11 +27,11 @@ public class GitSource implements StringsSource {
     private File iconFile;
 
     // Match locale from "values-(…)/strings.xml"
-    private final static Pattern VALUES_LOCALE_PATTERN =
+    final static Pattern VALUES_LOCALE_PATTERN =
             Pattern.compile("values(?:-([\\w-]+))?/.+?\\.xml");
 
     // Match "dontranslate.xml", "do-not-translate.xml", "donottranslate.xml" and such
-    private static final Pattern DO_NOT_TRANSLATE = Pattern.compile(
+    static final Pattern DO_NOT_TRANSLATE = Pattern.compile(
             "(?:do?[ _-]*no?t?|[u|i]n)[ _-]*trans(?:lat(?:e|able))?");
 
     public GitSource(final String gitUrl, final String branch) {
@@ -49,10 +49,10 @@ public class GitSource implements StringsSource {
         settings.set("git_url", mGitUrl);
         mWorkDir = workDir;
 
-        // 2. Clone the repository itself
+        // 2. Clone the repository itself (only the files we need are checked out)
         mCloneCallback = new GitCloneProgressCallback(callback);
         if (!GitWrapper.cloneRepo(
-                mGitUrl, mWorkDir, mBranch, mCloneCallback) || mCancelled) {
+                mGitUrl, mWorkDir, mBranch, true, mCloneCallback) || mCancelled) {
             // TODO These messages are still useful, show them somehow?
             //callback.showMessage(context.getString(R.string.invalid_repo));
             return false;
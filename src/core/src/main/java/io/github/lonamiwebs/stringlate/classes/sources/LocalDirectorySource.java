@@ -0,0 +1,264 @@
+package io.github.lonamiwebs.stringlate.classes.sources;
+
+import net.gsantner.opoc.util.FileUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+import io.github.lonamiwebs.stringlate.classes.Messenger;
+import io.github.lonamiwebs.stringlate.classes.git.GitWrapper;
+import io.github.lonamiwebs.stringlate.classes.resources.Resources;
+import io.github.lonamiwebs.stringlate.interfaces.StringsSource;
+
+// Reads the resources in place from a local directory (e.g. a checkout of the project),
+// instead of fetching them from anywhere. The directory is only scanned the first time
+// the source is set up. After that, filesChanged() keeps it up to date, so the same
+// source can be synced again and again (which only re-parses the files which changed).
+public class LocalDirectorySource implements StringsSource {
+
+    private final File mDir;
+    private final HashMap<String, ArrayList<File>> mLocaleFiles;
+    // The locales (null being the default one) whose files changed, see takeChangedLocales()
+    private final HashSet<String> mChangedLocales = new HashSet<>();
+    private boolean mScanned;
+    private boolean mCancelled;
+
+    private File iconFile;
+    private String mTranslationService;
+
+    private static final String[] STR_RESOURCES = {"<string", "<plurals"};
+
+    public LocalDirectorySource(final File dir) {
+        mDir = dir.getAbsoluteFile();
+        mLocaleFiles = new HashMap<>();
+    }
+
+    public File getDirectory() {
+        return mDir;
+    }
+
+    @Override
+    public boolean setup(final SourceSettings settings, final File workDir,
+                         final int desiredIconDpi,
+                         final Messenger.OnSyncProgress callback) {
+        callback.onUpdate(1, 0f);
+
+        settings.set("local_path", mDir.getPath());
+        mCancelled = false;
+        if (!mScanned) {
+            final GitWrapper.RepositoryResources repoResources =
+                    GitWrapper.findUsefulResources(mDir);
+
+            mLocaleFiles.clear();
+            for (File file : GitWrapper.searchAndroidResources(repoResources))
+                addResource(file);
+
+            iconFile = GitWrapper.findProperIcon(repoResources, desiredIconDpi);
+            mTranslationService = GitWrapper.mayUseTranslationServices(repoResources);
+            mScanned = true;
+        }
+
+        settings.set("translation_service", mTranslationService);
+        callback.onUpdate(1, 1f);
+        return mLocaleFiles.containsKey(null) && !mCancelled;
+    }
+
+    // Should be called when the given files (or directories) were created, modified
+    // or deleted, before syncing the source again. Returns true if any of them were
+    // resources, and so syncing again is needed to see the changes.
+    public boolean filesChanged(final Collection<File> files) {
+        if (!mScanned)
+            return true; // Everything will be scanned when set up anyway
+
+        boolean changed = false;
+        for (File file : files) {
+            file = file.getAbsoluteFile();
+            if (file.isDirectory()) {
+                // A whole directory was created (e.g. moved), look for resources inside
+                final File[] children = file.listFiles();
+                if (children != null) {
+                    final ArrayList<File> list = new ArrayList<>(children.length);
+                    for (File child : children)
+                        list.add(child);
+                    changed |= filesChanged(list);
+                }
+                continue;
+            }
+
+            // It may have been a resource before (or a directory with resources),
+            // which may have been deleted or may not have any strings anymore
+            if (removeResources(file))
+                changed = true;
+
+            final String path = getPath(file);
+            if (path == null || !path.toLowerCase(Locale.ROOT).endsWith(".xml"))
+                continue;
+
+            if (file.isFile() && FileUtils.fileContains(file, STR_RESOURCES) != -1)
+                changed |= addResource(file);
+        }
+        return changed;
+    }
+
+    // Should be called if it's unknown what changed, so everything is scanned again
+    public void rescan() {
+        mScanned = false;
+    }
+
+    // The locales (null being the default one) whose files were created, modified or
+    // deleted according to filesChanged(), since the last time this was called
+    public HashSet<String> takeChangedLocales() {
+        final HashSet<String> result = new HashSet<>(mChangedLocales);
+        mChangedLocales.clear();
+        return result;
+    }
+
+    // Returns true if it was a resource and it was added
+    private boolean addResource(final File file) {
+        final String path = getPath(file);
+        if (path == null)
+            return false;
+
+        Matcher m = GitSource.VALUES_LOCALE_PATTERN.matcher(path);
+
+        // Ensure that we can tell the locale from the path (otherwise it's invalid)
+        if (!m.find())
+            return false;
+
+        if (m.group(1) == null) { // Default locale
+            // If the file name is something like "do not translate", skip it
+            if (GitSource.DO_NOT_TRANSLATE.matcher(file.getName()).find())
+                return false;
+        }
+
+        if (!mLocaleFiles.containsKey(m.group(1)))
+            mLocaleFiles.put(m.group(1), new ArrayList<File>());
+
+        mLocaleFiles.get(m.group(1)).add(file);
+        mChangedLocales.add(m.group(1));
+        return true;
+    }
+
+    // Removes the file, or every file under it if it was a directory
+    private boolean removeResources(final File file) {
+        final String prefix = file.getPath() + File.separator;
+        boolean removed = false;
+        final Iterator<Map.Entry<String, ArrayList<File>>> it = mLocaleFiles.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<String, ArrayList<File>> locale = it.next();
+            final Iterator<File> files = locale.getValue().iterator();
+            while (files.hasNext()) {
+                final File f = files.next();
+                if (f.equals(file) || f.getPath().startsWith(prefix)) {
+                    files.remove();
+                    mChangedLocales.add(locale.getKey());
+                    removed = true;
+                }
+            }
+        }
+
+        // Forget the locales which have no resources left
+        final Iterator<ArrayList<File>> locales = mLocaleFiles.values().iterator();
+        while (locales.hasNext())
+            if (locales.next().isEmpty())
+                locales.remove();
+
+        return removed;
+    }
+
+    // The path relative to the directory, or null if the file is not inside it
+    // (or it's inside a hidden directory, which is never searched for resources)
+    private String getPath(final File file) {
+        final String dir = mDir.getPath() + File.separator;
+        if (!file.getPath().startsWith(dir))
+            return null;
+
+        final String path = file.getPath().substring(dir.length()).replace(File.separatorChar, '/');
+        if (path.startsWith(".") || path.contains("/."))
+            return null;
+
+        return path;
+    }
+
+    @Override
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    @Override
+    public String getName() {
+        return "local";
+    }
+
+    @Override
+    public List<String> getLocales() {
+        final ArrayList<String> result = new ArrayList<>(mLocaleFiles.size());
+        for (String locale : mLocaleFiles.keySet())
+            if (locale != null)
+                result.add(locale);
+        return result;
+    }
+
+    // The names of the resources are their paths relative to the directory
+
+    @Override
+    public List<String> getTranslatedResources(final String locale) {
+        final ArrayList<String> result = new ArrayList<>(mLocaleFiles.get(locale).size());
+        for (File file : mLocaleFiles.get(locale))
+            result.add(getPath(file));
+
+        return result;
+    }
+
+    @Override
+    public Resources getTranslatedResource(final String locale, final String name) {
+        return Resources.fromFile(getFile(locale, name));
+    }
+
+    @Override
+    public List<String> getDefaultResources() {
+        return getTranslatedResources(null);
+    }
+
+    @Override
+    public Resources getDefaultResource(String name) {
+        return Resources.fromFile(getFile(null, name));
+    }
+
+    @Override
+    public String getTranslatedResourceXml(final String locale, String name) {
+        return FileUtils.readTextFile(getFile(locale, name));
+    }
+
+    @Override
+    public String getDefaultResourceXml(String name) {
+        return FileUtils.readTextFile(getFile(null, name));
+    }
+
+    private File getFile(final String locale, final String name) {
+        for (File file : mLocaleFiles.get(locale))
+            if (getPath(file).equals(name))
+                return file;
+
+        throw new IllegalArgumentException("No resources were found with that name");
+    }
+
+    @Override
+    public File getIcon() {
+        return iconFile;
+    }
+
+    @Override
+    public void dispose() {
+        // Nothing to clean up, the files are not ours. What was found is kept,
+        // so that the source can be synced again without scanning everything
+    }
+}
@@ -168,7 +168,7 @@ public class NetworkUtils {
             InputStream input = connection.getResponseCode() < HttpURLConnection.HTTP_BAD_REQUEST
                     ? connection.getInputStream() : connection.getErrorStream();
 
-            return FileUtils.readCloseTextStream(connection.getInputStream());
+            return input == null ? "" : new String(FileUtils.readCloseBinaryStream(input), Charset.forName(UTF8));
         } catch (Exception e) {
             e.printStackTrace();
         }
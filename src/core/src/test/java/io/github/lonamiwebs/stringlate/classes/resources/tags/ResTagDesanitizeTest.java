@@ -0,0 +1,160 @@
+package io.github.lonamiwebs.stringlate.classes.resources.tags;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// desanitizeContent() was rewritten to avoid allocations, and must still give
+// exactly the same results as the original implementation, which is kept here
+public class ResTagDesanitizeTest {
+
+    // Pieces the random inputs are made of, so that the interesting cases are common
+    private static final String[] PIECES = {
+            "a", "Z", "0", " ", ";", "#", "\n", "\t", "\u00e9",
+            // Escapes, known or not
+            "\\", "\\n", "\\\"", "\\'", "\\\\", "\\t", "\\u", "\\x",
+            // Entities, complete, partial or unknown
+            "&", "&lt;", "&gt;", "&amp;", "&lt", "&gt", "&amp", "&;", "&l;", "&ltx;",
+            "&quot;", "&apos;", "&#39;", "&#x27;", "&LT;",
+            // Surrogates, paired and lone
+            "\ud83d\ude00", "\ud800", "\udc00"
+    };
+
+    private static final long SEED = 0x5712_1a7e;
+
+    @Test
+    public void fixedCases() {
+        final String[] cases = {
+                "", "plain", "\\", "a\\", "\\\\", "&", "a&b", "&lt;&gt;&amp;", "&lt", "&unknown;",
+                "&;", "a\nb", "\\n\n", "\\q", "&amp;lt;", "\ud83d\ude00\\n", "\ud800&", "&&;;"
+        };
+        for (String content : cases)
+            check(content);
+    }
+
+    @Test
+    public void randomInputs() {
+        final Random random = new Random(SEED);
+        for (int i = 0; i < 200000; ++i)
+            check(randomContent(random, random.nextInt(40)));
+    }
+
+    @Test
+    public void aroundMaxBuffer() {
+        final Random random = new Random(SEED);
+        final int max = ResTag.MAX_DESANITIZE_BUFFER;
+        final int[] lengths = {max - 2, max - 1, max, max + 1, max + 2, max * 2};
+        for (int length : lengths) {
+            // Made of pieces, so make it exactly as long as wanted, ending on a backslash
+            for (int j = 0; j < 4; ++j) {
+                final String content = randomContent(random, length);
+                check(content.substring(0, length - 1) + '\\');
+            }
+            // And a (growing) buffer being reused for smaller strings afterwards
+            check(randomContent(random, 10));
+        }
+    }
+
+    @Test
+    public void bufferNeverGrowsPastMax() {
+        final int max = ResTag.MAX_DESANITIZE_BUFFER;
+        // Doubling the buffer used for the first would go past the maximum
+        check(repeat("&lt;", max * 5 / 8 / 4));
+        check(repeat("&lt;", max * 7 / 8 / 4));
+        assertTrue(ResTag.sDesanitizeBuffer.get().length <= max);
+    }
+
+    private static String repeat(final String piece, final int count) {
+        final StringBuilder sb = new StringBuilder(piece.length() * count);
+        for (int i = 0; i < count; ++i)
+            sb.append(piece);
+        return sb.toString();
+    }
+
+    private static String randomContent(final Random random, final int minLength) {
+        final StringBuilder sb = new StringBuilder(minLength + 8);
+        while (sb.length() < minLength)
+            sb.append(PIECES[random.nextInt(PIECES.length)]);
+        // A trailing backslash is a special case of its own
+        if (random.nextInt(8) == 0)
+            sb.append('\\');
+        return sb.toString();
+    }
+
+    private static void check(final String content) {
+        assertEquals(describe(content), referenceDesanitize(content), ResTag.desanitizeContent(content));
+    }
+
+    private static String describe(final String content) {
+        return content.length() > 80 ? content.substring(0, 80) + "..." : content;
+    }
+
+    // The implementation desanitizeContent() had before it was rewritten
+    private static String referenceDesanitize(String content) {
+        char c;
+        int length = content.length();
+        StringBuilder sb = new StringBuilder(length + 16);
+
+        for (int i = 0; i < length; i++) {
+            c = content.charAt(i);
+            switch (c) {
+                case '\\':
+                    i++;
+                    if (i >= length) {
+                        sb.append('\\');
+                        break;
+                    }
+                    c = content.charAt(i);
+                    switch (c) {
+                        case '"':
+                        case '\'':
+                        case '\\':
+                            sb.append(c);
+                            break;
+                        case 'n':
+                            sb.append('\n');
+                            break;
+                        default:
+                            sb.append('\\').append(c);
+                            break;
+                    }
+                    break;
+
+                case '&':
+                    int semicolon = content.indexOf(';', i);
+                    if (semicolon < 0) {
+                        sb.append('&');
+                    } else {
+                        switch (content.substring(i, semicolon)) {
+                            case "&lt":
+                                sb.append('<');
+                                break;
+                            case "&gt":
+                                sb.append('>');
+                                break;
+                            case "&amp":
+                                sb.append('&');
+                                break;
+                            default:
+                                sb.append(content.substring(i, semicolon)).append(';');
+                                break;
+                        }
+                        i = semicolon;
+                    }
+                    break;
+
+                case '\n':
+                    sb.append(' ');
+                    break;
+
+                default:
+                    sb.append(c);
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+}